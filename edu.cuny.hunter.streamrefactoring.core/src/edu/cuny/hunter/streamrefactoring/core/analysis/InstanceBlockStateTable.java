@@ -0,0 +1,171 @@
+package edu.cuny.hunter.streamrefactoring.core.analysis;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import com.ibm.safe.dfa.IDFAState;
+import com.ibm.safe.rules.TypestateRule;
+import com.ibm.wala.ipa.callgraph.propagation.InstanceKey;
+import com.ibm.wala.ipa.cfg.BasicBlockInContext;
+import com.ibm.wala.ssa.analysis.IExplodedBasicBlock;
+import com.ibm.wala.util.collections.Pair;
+import com.ibm.wala.util.intset.MutableMapping;
+import com.ibm.wala.util.intset.OrdinalSetMapping;
+
+/**
+ * A table mapping an instance and a block to the instance's possible states at
+ * that block for each {@link TypestateRule}. Instances and blocks are indexed
+ * densely, and the possible states of a cell, for all rules, are encoded as a
+ * bitmask over the combinations of rules and states encountered. A cell may
+ * be present without any states.
+ *
+ * @apiNote Not thread-safe.
+ */
+public class InstanceBlockStateTable {
+
+	private static final long[] EMPTY_ROW = new long[0];
+
+	/**
+	 * The bit marking a cell as present.
+	 */
+	private static final long PRESENT = 1L << Long.SIZE - 1;
+
+	private OrdinalSetMapping<BasicBlockInContext<IExplodedBasicBlock>> blockMapping = MutableMapping.make();
+
+	private OrdinalSetMapping<InstanceKey> instanceMapping = MutableMapping.make();
+
+	/**
+	 * The bitmask of all states of each rule.
+	 */
+	private long[] ruleMasks = EMPTY_ROW;
+
+	private OrdinalSetMapping<TypestateRule> ruleMapping = MutableMapping.make();
+
+	private OrdinalSetMapping<Pair<TypestateRule, IDFAState>> ruleStateMapping = MutableMapping.make();
+
+	/**
+	 * The possible states, indexed by instance and then block.
+	 */
+	private long[][] table = new long[0][];
+
+	/**
+	 * Adds the cell of the given instance and block if it's not already present.
+	 */
+	public void add(InstanceKey instanceKey, BasicBlockInContext<IExplodedBasicBlock> block) {
+		this.add(instanceKey, block, PRESENT);
+	}
+
+	/**
+	 * Adds the given state to the possible states of the given instance at the
+	 * given block for the given rule.
+	 */
+	public void add(InstanceKey instanceKey, BasicBlockInContext<IExplodedBasicBlock> block, TypestateRule rule,
+			IDFAState state) {
+		this.add(instanceKey, block, PRESENT | this.encode(rule, state));
+	}
+
+	private void add(InstanceKey instanceKey, BasicBlockInContext<IExplodedBasicBlock> block, long states) {
+		int instance = index(this.instanceMapping, instanceKey);
+		int blockIndex = index(this.blockMapping, block);
+
+		if (instance >= this.table.length)
+			this.table = Arrays.copyOf(this.table, Math.max(instance + 1, 2 * this.table.length));
+
+		long[] row = this.table[instance];
+
+		if (row == null)
+			row = EMPTY_ROW;
+
+		if (blockIndex >= row.length)
+			row = this.table[instance] = Arrays.copyOf(row, Math.max(blockIndex + 1, 2 * row.length));
+
+		row[blockIndex] |= states;
+	}
+
+	/**
+	 * Returns true iff the cell of the given instance and block is present.
+	 */
+	public boolean contains(InstanceKey instanceKey, BasicBlockInContext<IExplodedBasicBlock> block) {
+		return (this.getCell(instanceKey, block) & PRESENT) != 0;
+	}
+
+	/**
+	 * Decodes the given bitmask of states.
+	 */
+	public Set<IDFAState> decode(long states) {
+		Set<IDFAState> ret = new HashSet<>(Long.bitCount(states));
+
+		for (long remaining = states; remaining != 0; remaining &= remaining - 1)
+			ret.add(this.decodeState(Long.numberOfTrailingZeros(remaining)));
+
+		return ret;
+	}
+
+	/**
+	 * Decodes the state at the given bit.
+	 */
+	public IDFAState decodeState(int bit) {
+		return this.ruleStateMapping.getMappedObject(bit).snd;
+	}
+
+	/**
+	 * Encodes the given state of the given rule as a bitmask.
+	 */
+	public long encode(TypestateRule rule, IDFAState state) {
+		Pair<TypestateRule, IDFAState> ruleState = Pair.make(rule, state);
+		int bit = this.ruleStateMapping.getMappedIndex(ruleState);
+
+		if (bit < 0) {
+			bit = this.ruleStateMapping.add(ruleState);
+
+			if (bit >= Long.SIZE - 1)
+				throw new IllegalStateException("Too many typestate rule and state combinations: " + (bit + 1) + ".");
+
+			int ruleIndex = index(this.ruleMapping, rule);
+
+			if (ruleIndex >= this.ruleMasks.length)
+				this.ruleMasks = Arrays.copyOf(this.ruleMasks, ruleIndex + 1);
+
+			this.ruleMasks[ruleIndex] |= 1L << bit;
+		}
+
+		return 1L << bit;
+	}
+
+	/**
+	 * Returns the possible states of the given instance at the given block for
+	 * the given rule.
+	 *
+	 * @return A bitmask of the possible states, which is zero if there are none.
+	 * @see #decode(long)
+	 */
+	public long get(InstanceKey instanceKey, BasicBlockInContext<IExplodedBasicBlock> block, TypestateRule rule) {
+		int ruleIndex = this.ruleMapping.getMappedIndex(rule);
+
+		if (ruleIndex < 0)
+			return 0;
+
+		return this.getCell(instanceKey, block) & this.ruleMasks[ruleIndex];
+	}
+
+	private long getCell(InstanceKey instanceKey, BasicBlockInContext<IExplodedBasicBlock> block) {
+		int instance = this.instanceMapping.getMappedIndex(instanceKey);
+		int blockIndex = this.blockMapping.getMappedIndex(block);
+
+		if (instance < 0 || blockIndex < 0 || instance >= this.table.length)
+			return 0;
+
+		long[] row = this.table[instance];
+
+		if (row == null || blockIndex >= row.length)
+			return 0;
+
+		return row[blockIndex];
+	}
+
+	private static <T> int index(OrdinalSetMapping<T> mapping, T object) {
+		int ret = mapping.getMappedIndex(object);
+		return ret < 0 ? mapping.add(object) : ret;
+	}
+}
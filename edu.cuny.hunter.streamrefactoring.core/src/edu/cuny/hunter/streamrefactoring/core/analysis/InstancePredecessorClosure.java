@@ -0,0 +1,224 @@
+package edu.cuny.hunter.streamrefactoring.core.analysis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import com.ibm.wala.ipa.callgraph.propagation.InstanceKey;
+import com.ibm.wala.util.intset.MutableMapping;
+import com.ibm.wala.util.intset.OrdinalSetMapping;
+
+/**
+ * The transitive closure of the predecessor relation between stream instances.
+ * Instances are indexed densely, the relation is collapsed into its strongly
+ * connected components, and all predecessors of each component are stored as a
+ * bitset. As such, queries neither recurse nor union the predecessors of each
+ * predecessor.
+ *
+ * @apiNote Not thread-safe.
+ */
+public class InstancePredecessorClosure {
+
+	private static final int[] NO_PREDECESSORS = new int[0];
+
+	/**
+	 * All predecessors of each component, indexed by component.
+	 */
+	private List<BitSet> componentPredecessors = new ArrayList<>();
+
+	/**
+	 * The component of each instance, indexed by instance.
+	 */
+	private int[] components;
+
+	private OrdinalSetMapping<InstanceKey> instanceMapping = MutableMapping.make();
+
+	/**
+	 * The immediate predecessors of each instance, indexed by instance.
+	 */
+	private int[][] predecessors;
+
+	/**
+	 * The instances without predecessors, i.e., the origins.
+	 */
+	private BitSet roots = new BitSet();
+
+	/**
+	 * Computes the closure of the given relation.
+	 *
+	 * @param instanceToPredecessorsMap
+	 *            A map from an instance to its immediate predecessors. Instances
+	 *            not in the map have no predecessors.
+	 */
+	public InstancePredecessorClosure(Map<InstanceKey, Set<InstanceKey>> instanceToPredecessorsMap) {
+		// index the instances along with their predecessors.
+		instanceToPredecessorsMap.forEach((instanceKey, predecessors) -> {
+			index(this.instanceMapping, instanceKey);
+			predecessors.forEach(p -> index(this.instanceMapping, p));
+		});
+
+		int size = this.instanceMapping.getSize();
+		this.predecessors = new int[size][];
+
+		for (int instance = 0; instance < size; instance++) {
+			Set<InstanceKey> predecessors = instanceToPredecessorsMap
+					.get(this.instanceMapping.getMappedObject(instance));
+
+			if (predecessors == null || predecessors.isEmpty()) {
+				this.predecessors[instance] = NO_PREDECESSORS;
+				this.roots.set(instance);
+			} else
+				this.predecessors[instance] = predecessors.stream().mapToInt(this.instanceMapping::getMappedIndex)
+						.toArray();
+		}
+
+		this.computeComponents();
+	}
+
+	/**
+	 * Computes the strongly connected components of the predecessor relation
+	 * along with their predecessors using an iterative version of Tarjan's
+	 * algorithm. A component is completed only after all of the components of
+	 * its predecessors are, so their predecessors are available by then.
+	 */
+	private void computeComponents() {
+		int size = this.predecessors.length;
+		this.components = new int[size];
+
+		int[] index = new int[size];
+		Arrays.fill(index, -1);
+		int[] lowLink = new int[size];
+		int nextIndex = 0;
+
+		// the instances of the components not yet completed.
+		int[] stack = new int[size];
+		int stackSize = 0;
+		boolean[] onStack = new boolean[size];
+
+		// the instances being visited along with the next predecessor to visit.
+		int[] visitStack = new int[size];
+		int visitStackSize = 0;
+		int[] nextPredecessor = new int[size];
+
+		for (int root = 0; root < size; root++) {
+			if (index[root] >= 0)
+				continue;
+
+			index[root] = lowLink[root] = nextIndex++;
+			stack[stackSize++] = root;
+			onStack[root] = true;
+			visitStack[visitStackSize++] = root;
+
+			while (visitStackSize > 0) {
+				int instance = visitStack[visitStackSize - 1];
+
+				if (nextPredecessor[instance] < this.predecessors[instance].length) {
+					int predecessor = this.predecessors[instance][nextPredecessor[instance]++];
+
+					if (index[predecessor] < 0) {
+						// visit the predecessor.
+						index[predecessor] = lowLink[predecessor] = nextIndex++;
+						stack[stackSize++] = predecessor;
+						onStack[predecessor] = true;
+						visitStack[visitStackSize++] = predecessor;
+					} else if (onStack[predecessor])
+						lowLink[instance] = Math.min(lowLink[instance], index[predecessor]);
+
+					continue;
+				}
+
+				// all predecessors of the instance have been visited.
+				--visitStackSize;
+
+				if (visitStackSize > 0) {
+					int successor = visitStack[visitStackSize - 1];
+					lowLink[successor] = Math.min(lowLink[successor], lowLink[instance]);
+				}
+
+				if (lowLink[instance] == index[instance]) {
+					// the instance is the root of a component. Pop its members.
+					int component = this.componentPredecessors.size();
+					int end = stackSize;
+					int member;
+
+					do {
+						member = stack[--stackSize];
+						onStack[member] = false;
+						this.components[member] = component;
+					} while (member != instance);
+
+					BitSet closure = new BitSet();
+
+					for (int i = stackSize; i < end; i++)
+						for (int predecessor : this.predecessors[stack[i]]) {
+							closure.set(predecessor);
+
+							// those of other components are complete.
+							if (this.components[predecessor] != component)
+								closure.or(this.componentPredecessors.get(this.components[predecessor]));
+						}
+
+					this.componentPredecessors.add(closure);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns all of the predecessors of the given instances.
+	 */
+	public Set<InstanceKey> getAllPredecessors(Collection<InstanceKey> instanceKeys) {
+		BitSet ret = new BitSet();
+
+		for (InstanceKey instanceKey : instanceKeys) {
+			int instance = this.instanceMapping.getMappedIndex(instanceKey);
+
+			if (instance >= 0)
+				ret.or(this.componentPredecessors.get(this.components[instance]));
+		}
+
+		return this.toSet(ret);
+	}
+
+	/**
+	 * Returns all of the predecessors of the given instance.
+	 */
+	public Set<InstanceKey> getAllPredecessors(InstanceKey instanceKey) {
+		int instance = this.instanceMapping.getMappedIndex(instanceKey);
+
+		if (instance < 0)
+			return Collections.emptySet();
+
+		return this.toSet(this.componentPredecessors.get(this.components[instance]));
+	}
+
+	/**
+	 * Returns the possible origins of the given instance, i.e., its predecessors
+	 * without predecessors or the instance itself if it has none.
+	 */
+	public Set<InstanceKey> getOrigins(InstanceKey instanceKey) {
+		int instance = this.instanceMapping.getMappedIndex(instanceKey);
+
+		if (instance < 0 || this.roots.get(instance))
+			return Collections.singleton(instanceKey);
+
+		BitSet ret = (BitSet) this.componentPredecessors.get(this.components[instance]).clone();
+		ret.and(this.roots);
+		return this.toSet(ret);
+	}
+
+	private Set<InstanceKey> toSet(BitSet instances) {
+		return instances.stream().mapToObj(this.instanceMapping::getMappedObject).collect(Collectors.toSet());
+	}
+
+	private static <T> int index(OrdinalSetMapping<T> mapping, T object) {
+		int ret = mapping.getMappedIndex(object);
+		return ret < 0 ? mapping.add(object) : ret;
+	}
+}
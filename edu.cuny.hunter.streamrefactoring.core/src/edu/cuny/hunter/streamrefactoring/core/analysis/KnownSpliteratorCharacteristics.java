@@ -0,0 +1,174 @@
+package edu.cuny.hunter.streamrefactoring.core.analysis;
+
+import static java.util.Spliterator.CONCURRENT;
+import static java.util.Spliterator.DISTINCT;
+import static java.util.Spliterator.IMMUTABLE;
+import static java.util.Spliterator.NONNULL;
+import static java.util.Spliterator.ORDERED;
+import static java.util.Spliterator.SIZED;
+import static java.util.Spliterator.SORTED;
+import static java.util.Spliterator.SUBSIZED;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Spliterator;
+
+/**
+ * The {@link Spliterator} characteristics of the streams created from well-known
+ * JDK and third-party types, i.e., those that would otherwise be extracted via
+ * reflection. Only concrete types whose characteristics depend on neither their
+ * contents nor the library version are listed, e.g., Guava's singleton
+ * collections aren't.
+ *
+ * @apiNote The characteristics are those of Java 8.
+ */
+public final class KnownSpliteratorCharacteristics {
+
+	/**
+	 * A map from the binary name of an {@link Iterable} type to the
+	 * characteristics of its {@link Spliterator}. Those are the characteristics
+	 * of its streams regardless of the stream creation method.
+	 */
+	private static final Map<String, Integer> ITERABLE_TYPE_TO_CHARACTERISTICS;
+
+	/**
+	 * A map from the binary name of a non-{@link Iterable} type to a map from
+	 * the name of one of its stream creation methods to the characteristics of
+	 * the stream it creates.
+	 */
+	private static final Map<String, Map<String, Integer>> TYPE_TO_METHOD_TO_CHARACTERISTICS;
+
+	static {
+		Map<String, Integer> iterableTypeToCharacteristics = new HashMap<>();
+
+		// lists.
+		put(iterableTypeToCharacteristics, ORDERED | SIZED | SUBSIZED, "java.util.ArrayList", "java.util.LinkedList",
+				"java.util.Vector", "java.util.Stack", "java.util.Arrays$ArrayList",
+				"org.eclipse.collections.impl.list.mutable.FastList");
+		put(iterableTypeToCharacteristics, ORDERED | SIZED | SUBSIZED | IMMUTABLE,
+				"java.util.concurrent.CopyOnWriteArrayList");
+		put(iterableTypeToCharacteristics, ORDERED | SIZED | SUBSIZED | IMMUTABLE | NONNULL,
+				"com.google.common.collect.RegularImmutableList");
+
+		// sets.
+		put(iterableTypeToCharacteristics, DISTINCT | SIZED, "java.util.HashSet", "java.util.HashMap$KeySet",
+				"java.util.HashMap$EntrySet");
+		put(iterableTypeToCharacteristics, DISTINCT | SIZED | SUBSIZED,
+				"org.eclipse.collections.impl.set.mutable.UnifiedSet");
+		put(iterableTypeToCharacteristics, ORDERED | DISTINCT | SIZED | SUBSIZED, "java.util.LinkedHashSet",
+				"java.util.LinkedHashMap$LinkedKeySet", "java.util.LinkedHashMap$LinkedEntrySet");
+		put(iterableTypeToCharacteristics, ORDERED | DISTINCT | SORTED | SIZED, "java.util.TreeSet",
+				"java.util.TreeMap$EntrySet");
+		put(iterableTypeToCharacteristics, ORDERED | DISTINCT | SORTED | SIZED | SUBSIZED,
+				"org.eclipse.collections.impl.set.sorted.mutable.TreeSortedSet");
+		put(iterableTypeToCharacteristics, ORDERED | DISTINCT | SORTED | CONCURRENT | NONNULL,
+				"java.util.concurrent.ConcurrentSkipListSet");
+		put(iterableTypeToCharacteristics, DISTINCT | SIZED | SUBSIZED | IMMUTABLE,
+				"java.util.concurrent.CopyOnWriteArraySet");
+		put(iterableTypeToCharacteristics, ORDERED | DISTINCT | SIZED | SUBSIZED | IMMUTABLE | NONNULL,
+				"com.google.common.collect.RegularImmutableSet");
+		put(iterableTypeToCharacteristics, ORDERED | DISTINCT | SORTED | SIZED | SUBSIZED | IMMUTABLE | NONNULL,
+				"com.google.common.collect.RegularImmutableSortedSet");
+
+		// map values.
+		put(iterableTypeToCharacteristics, SIZED, "java.util.HashMap$Values");
+		put(iterableTypeToCharacteristics, ORDERED | SIZED | SUBSIZED, "java.util.LinkedHashMap$LinkedValues");
+		put(iterableTypeToCharacteristics, ORDERED | SIZED, "java.util.TreeMap$Values");
+
+		// queues and deques.
+		put(iterableTypeToCharacteristics, ORDERED | SIZED | SUBSIZED | NONNULL, "java.util.ArrayDeque");
+		put(iterableTypeToCharacteristics, SIZED | SUBSIZED | NONNULL, "java.util.PriorityQueue",
+				"java.util.concurrent.PriorityBlockingQueue");
+		put(iterableTypeToCharacteristics, SIZED | SUBSIZED, "java.util.concurrent.DelayQueue");
+		put(iterableTypeToCharacteristics, ORDERED | CONCURRENT | NONNULL, "java.util.concurrent.ArrayBlockingQueue",
+				"java.util.concurrent.LinkedBlockingQueue", "java.util.concurrent.LinkedBlockingDeque",
+				"java.util.concurrent.ConcurrentLinkedQueue", "java.util.concurrent.ConcurrentLinkedDeque",
+				"java.util.concurrent.LinkedTransferQueue");
+
+		ITERABLE_TYPE_TO_CHARACTERISTICS = Collections.unmodifiableMap(iterableTypeToCharacteristics);
+
+		Map<String, Map<String, Integer>> typeToMethodToCharacteristics = new HashMap<>();
+
+		// character sequences.
+		for (String type : new String[] { "java.lang.String", "java.lang.StringBuilder", "java.lang.StringBuffer" }) {
+			put(typeToMethodToCharacteristics, type, "chars", ORDERED | SIZED | SUBSIZED);
+			put(typeToMethodToCharacteristics, type, "codePoints", ORDERED);
+		}
+
+		// random numbers.
+		for (String type : new String[] { "java.util.Random", "java.util.SplittableRandom" })
+			for (String method : new String[] { "ints", "longs", "doubles" })
+				put(typeToMethodToCharacteristics, type, method, SIZED | SUBSIZED | NONNULL | IMMUTABLE);
+
+		// others.
+		put(typeToMethodToCharacteristics, "java.util.BitSet", "stream",
+				ORDERED | DISTINCT | SORTED | SIZED | SUBSIZED);
+		put(typeToMethodToCharacteristics, "java.io.BufferedReader", "lines", ORDERED | NONNULL);
+		put(typeToMethodToCharacteristics, "java.util.regex.Pattern", "splitAsStream", ORDERED | NONNULL);
+
+		for (String type : new String[] { "java.util.zip.ZipFile", "java.util.jar.JarFile" })
+			put(typeToMethodToCharacteristics, type, "stream",
+					ORDERED | DISTINCT | IMMUTABLE | NONNULL | SIZED | SUBSIZED);
+
+		typeToMethodToCharacteristics.replaceAll((type, methodToCharacteristics) -> Collections
+				.unmodifiableMap(methodToCharacteristics));
+		TYPE_TO_METHOD_TO_CHARACTERISTICS = Collections.unmodifiableMap(typeToMethodToCharacteristics);
+	}
+
+	/**
+	 * Returns the characteristics of the stream created by calling the given
+	 * method on an instance of the given type.
+	 *
+	 * @param className
+	 *            The binary name of the instance's type.
+	 * @param calledMethodName
+	 *            The name of the stream creation method.
+	 * @return The known characteristics or <code>null</code> if they're unknown.
+	 * @see Spliterator#characteristics()
+	 */
+	public static Integer get(String className, String calledMethodName) {
+		Integer ret = ITERABLE_TYPE_TO_CHARACTERISTICS.get(className);
+
+		if (ret != null)
+			return ret;
+
+		Map<String, Integer> methodToCharacteristics = TYPE_TO_METHOD_TO_CHARACTERISTICS.get(className);
+
+		if (methodToCharacteristics == null)
+			return null;
+
+		return methodToCharacteristics.get(calledMethodName);
+	}
+
+	/**
+	 * Returns a map from the binary name of an {@link Iterable} type to the
+	 * characteristics of its {@link Spliterator}.
+	 */
+	public static Map<String, Integer> getIterableTypeToCharacteristics() {
+		return ITERABLE_TYPE_TO_CHARACTERISTICS;
+	}
+
+	/**
+	 * Returns a map from the binary name of a non-{@link Iterable} type to a map
+	 * from the name of one of its stream creation methods to the characteristics
+	 * of the stream it creates.
+	 */
+	public static Map<String, Map<String, Integer>> getTypeToMethodToCharacteristics() {
+		return TYPE_TO_METHOD_TO_CHARACTERISTICS;
+	}
+
+	private static void put(Map<String, Integer> typeToCharacteristics, int characteristics, String... classNames) {
+		for (String className : classNames)
+			typeToCharacteristics.put(className, characteristics);
+	}
+
+	private static void put(Map<String, Map<String, Integer>> typeToMethodToCharacteristics, String className,
+			String methodName, int characteristics) {
+		typeToMethodToCharacteristics.computeIfAbsent(className, k -> new HashMap<>()).put(methodName,
+				characteristics);
+	}
+
+	private KnownSpliteratorCharacteristics() {
+	}
+}
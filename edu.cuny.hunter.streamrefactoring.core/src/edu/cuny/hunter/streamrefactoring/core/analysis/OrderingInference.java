@@ -3,8 +3,10 @@ package edu.cuny.hunter.streamrefactoring.core.analysis;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.Collection;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Spliterator;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.BaseStream;
@@ -18,13 +20,56 @@ import com.ibm.wala.analysis.typeInference.TypeAbstraction;
 import com.ibm.wala.classLoader.IClass;
 import com.ibm.wala.ipa.cha.IClassHierarchy;
 import com.ibm.wala.types.TypeReference;
+import com.ibm.wala.util.collections.Pair;
 
 import edu.cuny.hunter.streamrefactoring.core.utils.LoggerNames;
 
 class OrderingInference {
 
+	/**
+	 * The outcome of inferring the ordering of a type, i.e., either an
+	 * {@link Ordering} or the exception thrown while inferring it.
+	 */
+	private static class InferredOrdering {
+
+		private Exception exception;
+
+		private Ordering ordering;
+
+		public InferredOrdering(Exception exception) {
+			this.exception = exception;
+		}
+
+		public InferredOrdering(Ordering ordering) {
+			this.ordering = ordering;
+		}
+
+		/**
+		 * Returns the inferred {@link Ordering} or rethrows the exception thrown
+		 * while inferring it.
+		 */
+		public Ordering get() throws NoniterableException, NoninstantiableException, CannotExtractSpliteratorException {
+			if (this.exception instanceof NoniterableException)
+				throw (NoniterableException) this.exception;
+			else if (this.exception instanceof NoninstantiableException)
+				throw (NoninstantiableException) this.exception;
+			else if (this.exception instanceof CannotExtractSpliteratorException)
+				throw (CannotExtractSpliteratorException) this.exception;
+			else
+				return this.ordering;
+		}
+	}
+
 	private static final Logger LOGGER = Logger.getLogger(LoggerNames.LOGGER_NAME);
 
+	/**
+	 * Memoizes the outcome of inferring the ordering of a binary class name and a
+	 * called method name, including failures. Inference via reflection only
+	 * depends on the classes available to the tool, so the outcomes are shared by
+	 * all instances, i.e., across projects.
+	 */
+	private static final Map<Pair<String, String>, InferredOrdering> CLASS_AND_METHOD_NAMES_TO_INFERRED_ORDERING = new ConcurrentHashMap<>();
+
 	private IClassHierarchy classHierarchy;
 
 	private Objenesis objenesis = new ObjenesisStd();
@@ -162,9 +207,48 @@ class OrderingInference {
 		return ret;
 	}
 
-	// TODO: Cache this?
+	/**
+	 * Infers the ordering of the stream created by calling the given method on an
+	 * instance of the given class. The outcome is memoized.
+	 *
+	 * @param className
+	 *            The binary name of the instance's class.
+	 * @param calledMethodName
+	 *            The name of the stream creation method.
+	 * @return The inferred {@link Ordering}.
+	 */
 	private Ordering inferOrdering(String className, String calledMethodName)
 			throws NoniterableException, NoninstantiableException, CannotExtractSpliteratorException {
+		Pair<String, String> key = Pair.make(className, calledMethodName);
+		InferredOrdering inferredOrdering = CLASS_AND_METHOD_NAMES_TO_INFERRED_ORDERING.get(key);
+
+		if (inferredOrdering == null) {
+			// not memoized yet. Concurrent inferences of the same key are harmless.
+			try {
+				inferredOrdering = new InferredOrdering(this.inferOrderingWithoutCache(className, calledMethodName));
+			} catch (NoniterableException | NoninstantiableException | CannotExtractSpliteratorException e) {
+				inferredOrdering = new InferredOrdering(e);
+			}
+
+			InferredOrdering previous = CLASS_AND_METHOD_NAMES_TO_INFERRED_ORDERING.putIfAbsent(key, inferredOrdering);
+
+			if (previous != null)
+				inferredOrdering = previous;
+		} else
+			LOGGER.fine(() -> "Using memoized ordering for: " + className + "." + calledMethodName + ".");
+
+		return inferredOrdering.get();
+	}
+
+	private Ordering inferOrderingWithoutCache(String className, String calledMethodName)
+			throws NoniterableException, NoninstantiableException, CannotExtractSpliteratorException {
+		// first, consult the known characteristics to avoid reflection.
+		Integer characteristics = KnownSpliteratorCharacteristics.get(className, calledMethodName);
+
+		if (characteristics != null)
+			return (characteristics & Spliterator.ORDERED) == 0 ? Ordering.UNORDERED : Ordering.ORDERED;
+
+		// otherwise, fall back to extracting the spliterator via reflection.
 		try {
 			Class<?> clazz = Class.forName(className);
 
@@ -3,6 +3,8 @@ package edu.cuny.hunter.streamrefactoring.core.analysis;
 import java.util.Arrays;
 
 public enum PreconditionFailure {
+	// the call graph couldn't be built within budget.
+	CALL_GRAPH_BUDGET_EXCEEDED(18),
 	CURRENTLY_NOT_HANDLED(14),
 	HAS_SIDE_EFFECTS(8),
 	HAS_SIDE_EFFECTS2(9),
@@ -20,6 +22,8 @@ public enum PreconditionFailure {
 	NON_ITERABLE_POSSIBLE_STREAM_SOURCE(2), // should just be #97 currently.
 	REDUCE_ORDERING_MATTERS(10), // either pivotal code isn't reachable or
 	STREAM_CODE_NOT_REACHABLE(15), // user didn't specify entry points.
+	// the typestate analysis couldn't be performed within budget.
+	TYPESTATE_BUDGET_EXCEEDED(19),
 	UNORDERED(12); // N may be too small.
 
 	static {
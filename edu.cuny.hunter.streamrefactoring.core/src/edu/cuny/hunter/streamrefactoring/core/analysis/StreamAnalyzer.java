@@ -1,19 +1,34 @@
 package edu.cuny.hunter.streamrefactoring.core.analysis;
 
 import static com.ibm.wala.ipa.callgraph.impl.Util.makeMainEntrypoints;
+import static edu.cuny.hunter.streamrefactoring.core.safe.Util.instanceKeyCorrespondsWithInstantiationInstruction;
 
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.Scanner;
 import java.util.Set;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.BaseStream;
@@ -23,8 +38,10 @@ import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.SubMonitor;
 import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.JavaModelException;
 import org.eclipse.jdt.core.dom.ASTVisitor;
 import org.eclipse.jdt.core.dom.IMethodBinding;
 import org.eclipse.jdt.core.dom.ITypeBinding;
@@ -33,6 +50,7 @@ import org.eclipse.jdt.internal.corext.util.JdtFlags;
 
 import com.ibm.safe.internal.exceptions.PropertiesException;
 import com.ibm.safe.rules.TypestateRule;
+import com.ibm.wala.classLoader.IClassLoader;
 import com.ibm.wala.ipa.callgraph.AnalysisOptions;
 import com.ibm.wala.ipa.callgraph.AnalysisOptions.ReflectionOptions;
 import com.ibm.wala.ipa.callgraph.CallGraph;
@@ -42,14 +60,21 @@ import com.ibm.wala.ipa.callgraph.propagation.InstanceKey;
 import com.ibm.wala.ipa.cha.ClassHierarchyException;
 import com.ibm.wala.ipa.cha.IClassHierarchy;
 import com.ibm.wala.shrikeCT.InvalidClassFileException;
+import com.ibm.wala.ssa.SSAInvokeInstruction;
 import com.ibm.wala.ssa.SSAOptions;
+import com.ibm.wala.types.MethodReference;
 import com.ibm.wala.util.CancelException;
+import com.ibm.wala.util.collections.Pair;
 import com.ibm.wala.util.scope.JUnitEntryPoints;
 
 import edu.cuny.hunter.streamrefactoring.core.analysis.StreamStateMachine.Statistics;
 import edu.cuny.hunter.streamrefactoring.core.messages.Messages;
+import edu.cuny.hunter.streamrefactoring.core.safe.NoApplicationCodeExistsInCallStringsException;
 import edu.cuny.hunter.streamrefactoring.core.utils.LoggerNames;
 import edu.cuny.hunter.streamrefactoring.core.utils.TimeCollector;
+import edu.cuny.hunter.streamrefactoring.core.wala.AnalysisEngineCache;
+import edu.cuny.hunter.streamrefactoring.core.wala.AnalysisEngineCacheInvalidator;
+import edu.cuny.hunter.streamrefactoring.core.wala.CallGraphBudgetExceededException;
 import edu.cuny.hunter.streamrefactoring.core.wala.EclipseProjectAnalysisEngine;
 
 @SuppressWarnings("restriction")
@@ -59,14 +84,61 @@ public class StreamAnalyzer extends ASTVisitor {
 
 	private static final Logger LOGGER = Logger.getLogger(LoggerNames.LOGGER_NAME);
 
+	private static final long N_FOR_STREAMS_ADAPTATION_TIME_BUDGET_DEFAULT = 60_000;
+
 	private static final int N_FOR_STREAMS_DEFAULT = 2;
 
+	private static final int N_FOR_STREAMS_MAX_DEFAULT = 5;
+
+	private static final int NUMBER_OF_THREADS_DEFAULT = 1;
+
+	private static final long PROJECT_HEAP_BUDGET_DEFAULT = 2L * 1024 * 1024 * 1024;
+
 	private static void addImplicitEntryPoints(Collection<Entrypoint> target, Iterable<Entrypoint> source) {
 		for (Entrypoint implicitEntryPoint : source)
 			if (target.add(implicitEntryPoint))
 				LOGGER.info(() -> "Adding implicit entry point: " + implicitEntryPoint);
 	}
 
+	/**
+	 * Builds the call graph of the given engine from the given entry points
+	 * without reflection analysis.
+	 *
+	 * @param engine
+	 *            The engine whose call graph to build.
+	 * @param entryPoints
+	 *            The entry points of the call graph.
+	 * @param monitor
+	 *            To report progress and check for cancellation.
+	 */
+	private static void buildCallGraph(EclipseProjectAnalysisEngine<InstanceKey> engine,
+			Iterable<Entrypoint> entryPoints, IProgressMonitor monitor)
+			throws CallGraphBuilderCancelException, CancelException {
+		AnalysisOptions options = createCallGraphOptions(engine, entryPoints);
+
+		try {
+			engine.buildSafeCallGraph(options, SubMonitor.convert(monitor, "Building call graph", 1));
+		} catch (IllegalStateException e) {
+			LOGGER.log(Level.SEVERE, e, () -> "Exception encountered while building call graph for project: "
+					+ engine.getProject().getElementName());
+			throw e;
+		}
+	}
+
+	/**
+	 * Creates the options for building the call graph of the given engine from
+	 * the given entry points without reflection analysis.
+	 */
+	private static AnalysisOptions createCallGraphOptions(EclipseProjectAnalysisEngine<InstanceKey> engine,
+			Iterable<Entrypoint> entryPoints) {
+		// set options.
+		AnalysisOptions options = engine.getDefaultOptions(entryPoints);
+		// Turn off reflection analysis.
+		options.setReflectionOptions(ReflectionOptions.NONE);
+		options.getSSAOptions().setPiNodePolicy(SSAOptions.getAllBuiltInPiNodes());
+		return options;
+	}
+
 	/**
 	 * Read entry_points.txt and get a set of method signatures, then, get entry
 	 * points by those signatures
@@ -89,6 +161,57 @@ public class StreamAnalyzer extends ASTVisitor {
 		return entrypoints;
 	}
 
+	/**
+	 * Finds the streams whose instances the engine's current call graph can't
+	 * distinguish, i.e., those whose instance keys have no application code in
+	 * their call strings or that share an instance key with another stream.
+	 *
+	 * @param engine
+	 *            The engine whose call graph has been built.
+	 * @param streamSet
+	 *            The streams to check.
+	 * @return The streams whose instances can't be distinguished.
+	 */
+	private static Set<Stream> findImpreciseStreams(EclipseProjectAnalysisEngine<InstanceKey> engine,
+			Set<Stream> streamSet) throws InvalidClassFileException, IOException, CoreException {
+		Set<InstanceKey> streamInstanceKeys = new HashSet<>();
+
+		for (InstanceKey instanceKey : engine.getPointerAnalysis().getInstanceKeys())
+			if (instanceKey.getConcreteType() != null && Util.implementsBaseStream(
+					instanceKey.getConcreteType().getReference(), engine.getClassHierarchy()))
+				streamInstanceKeys.add(instanceKey);
+
+		Map<InstanceKey, Set<Stream>> instanceKeyToStreams = new HashMap<>();
+		Set<Stream> ret = new HashSet<>();
+
+		for (Stream stream : streamSet) {
+			Optional<SSAInvokeInstruction> instruction;
+			try {
+				instruction = stream.getInstructionForCreation(engine);
+			} catch (UnhandledCaseException e) {
+				// leave it to the rest of the analysis.
+				continue;
+			}
+
+			if (!instruction.isPresent())
+				continue;
+
+			try {
+				for (InstanceKey instanceKey : streamInstanceKeys)
+					if (instanceKeyCorrespondsWithInstantiationInstruction(instanceKey, instruction.get(),
+							stream.getEnclosingMethodReference(), engine))
+						instanceKeyToStreams.computeIfAbsent(instanceKey, k -> new HashSet<>()).add(stream);
+			} catch (NoApplicationCodeExistsInCallStringsException e) {
+				LOGGER.log(Level.FINE, e, () -> "Can't distinguish: " + stream.getCreation() + ".");
+				ret.add(stream);
+			}
+		}
+
+		// streams sharing an instance key can't be distinguished.
+		instanceKeyToStreams.values().stream().filter(s -> s.size() > 1).forEach(ret::addAll);
+		return ret;
+	}
+
 	/**
 	 * Search entry_points.txt in project directory recursively.
 	 *
@@ -114,12 +237,103 @@ public class StreamAnalyzer extends ASTVisitor {
 			return file;
 	}
 
+	/**
+	 * Returns the streams of the given projects.
+	 */
+	private static Set<Stream> getStreams(List<IJavaProject> projects, Map<IJavaProject, Set<Stream>> projectToStreams) {
+		return projects.stream().map(projectToStreams::get).flatMap(Set::stream).collect(Collectors.toSet());
+	}
+
+	/**
+	 * Groups the given projects such that projects requiring one another,
+	 * directly or through other given projects, are in the same group.
+	 *
+	 * @param projects
+	 *            The projects to group.
+	 * @return The groups, each sorted by project name, in the order of their
+	 *         first projects in the given list.
+	 */
+	private static List<List<IJavaProject>> groupRelatedProjects(List<IJavaProject> projects)
+			throws JavaModelException {
+		Map<String, IJavaProject> nameToProject = new HashMap<>();
+		Map<IJavaProject, Set<IJavaProject>> projectToRelatedProjects = new HashMap<>();
+
+		for (IJavaProject project : projects) {
+			nameToProject.put(project.getElementName(), project);
+			projectToRelatedProjects.put(project, new HashSet<>());
+		}
+
+		for (IJavaProject project : projects)
+			for (String requiredProjectName : project.getRequiredProjectNames()) {
+				IJavaProject requiredProject = nameToProject.get(requiredProjectName);
+
+				if (requiredProject != null) {
+					projectToRelatedProjects.get(project).add(requiredProject);
+					projectToRelatedProjects.get(requiredProject).add(project);
+				}
+			}
+
+		List<List<IJavaProject>> ret = new ArrayList<>();
+		Set<IJavaProject> groupedProjects = new HashSet<>();
+
+		for (IJavaProject project : projects)
+			if (groupedProjects.add(project)) {
+				List<IJavaProject> group = new ArrayList<>();
+				Deque<IJavaProject> worklist = new ArrayDeque<>();
+				worklist.push(project);
+
+				while (!worklist.isEmpty()) {
+					IJavaProject groupedProject = worklist.pop();
+					group.add(groupedProject);
+
+					for (IJavaProject relatedProject : projectToRelatedProjects.get(groupedProject))
+						if (groupedProjects.add(relatedProject))
+							worklist.push(relatedProject);
+				}
+
+				group.sort(Comparator.comparing(IJavaProject::getElementName));
+
+				if (group.size() > 1)
+					LOGGER.info(() -> "Analyzing together: " + group.stream().map(IJavaProject::getElementName)
+							.collect(Collectors.joining(", ")) + ".");
+
+				ret.add(group);
+			}
+
+		return ret;
+	}
+
 	/**
 	 * Map from {@link EclipseProjectAnalysisEngine}s that have their
 	 * {@link CallGraph}s built to the {@link Entrypoint}s that were used to build
 	 * the graph.
 	 */
-	private Map<EclipseProjectAnalysisEngine<InstanceKey>, Collection<Entrypoint>> enginesWithBuiltCallGraphsToEntrypointsUsed = new HashMap<>();
+	private Map<EclipseProjectAnalysisEngine<InstanceKey>, Collection<Entrypoint>> enginesWithBuiltCallGraphsToEntrypointsUsed = new ConcurrentHashMap<>();
+
+	/**
+	 * True iff the N to use for instances of {@link BaseStream} should be
+	 * increased at the creation sites of streams that the call graph can't
+	 * distinguish.
+	 */
+	private boolean adaptNForStreams;
+
+	/**
+	 * True iff {@link EclipseProjectAnalysisEngine}s, along with their call graphs,
+	 * should be cached across analyses.
+	 */
+	private boolean cacheCallGraphs;
+
+	/**
+	 * The heap, in bytes, that may be in use while building a project's call
+	 * graph before falling back to a cheaper policy. Zero for no budget.
+	 */
+	private long callGraphHeapBudget;
+
+	/**
+	 * The time, in milliseconds, that building a project's call graph may take
+	 * before falling back to a cheaper policy. Zero for no budget.
+	 */
+	private long callGraphTimeBudget;
 
 	private boolean findImplicitBenchmarkEntryPoints;
 
@@ -129,17 +343,102 @@ public class StreamAnalyzer extends ASTVisitor {
 
 	private boolean findImplicitTestEntryPoints;
 
+	/**
+	 * True iff cached {@link EclipseProjectAnalysisEngine}s should be invalidated
+	 * by Java model deltas rather than by rehashing each project's source and
+	 * class files and classpath on every analysis. Implies that call graphs are cached.
+	 */
+	private boolean incremental;
+
+	/**
+	 * True iff projects requiring one another should be analyzed together, i.e.,
+	 * using a single analysis scope, call graph, and typestate analysis, rather
+	 * than one per project.
+	 */
+	private boolean mergeProjects;
+
 	/**
 	 * The N to use for instances of {@link BaseStream} in the nCFA.
 	 */
 	private int nForStreams = N_FOR_STREAMS_DEFAULT;
 
+	/**
+	 * The time, in milliseconds, that may be spent rebuilding call graphs when
+	 * adapting the N to use for instances of {@link BaseStream}.
+	 */
+	private long nForStreamsAdaptationTimeBudget = N_FOR_STREAMS_ADAPTATION_TIME_BUDGET_DEFAULT;
+
+	/**
+	 * The maximum N to adapt to for instances of {@link BaseStream}.
+	 */
+	private int maxNForStreams = N_FOR_STREAMS_MAX_DEFAULT;
+
 	private int numberOfProcessedStreamInstances;
 
 	private int numberOfSkippedStreamInstances;
 
+	/**
+	 * The maximum number of threads to use for analyzing projects concurrently.
+	 */
+	private int numberOfThreads = NUMBER_OF_THREADS_DEFAULT;
+
+	/**
+	 * The heap, in bytes, expected to be needed for analyzing a single project.
+	 * Limits the number of projects analyzed concurrently to those that fit into
+	 * the maximum heap.
+	 */
+	private long projectHeapBudget = PROJECT_HEAP_BUDGET_DEFAULT;
+
+	/**
+	 * True iff the primordial part of the class hierarchy should be shared among
+	 * {@link EclipseProjectAnalysisEngine}s using the same JRE.
+	 */
+	private boolean sharePrimordialClassHierarchy;
+
+	/**
+	 * The primordial loaders shared among the engines created during the current
+	 * run of {@link #analyze(Optional, IProgressMonitor)} or null if there are
+	 * none.
+	 */
+	private Map<String, IClassLoader> sharedPrimordialClassLoaders;
+
+	/**
+	 * True iff the {@link java.util.stream} pipeline implementation should be
+	 * bypassed using summaries of its operations when building call graphs.
+	 */
+	private boolean useStreamLibrarySummaries;
+
+	/**
+	 * True iff the typestate rules should only be solved for the streams
+	 * surviving the checks not requiring typestate analysis.
+	 */
+	private boolean useDemandDrivenTypestate;
+
+	/**
+	 * True iff a single typestate rule whose automaton is the product of those of
+	 * the individual stream attributes should be used.
+	 */
+	private boolean useProductTypestateRule;
+
 	private Set<Stream> streamSet = new HashSet<>();
 
+	/**
+	 * The time, in milliseconds, that solving a typestate rule for a single stream
+	 * instance may take. Zero for no budget.
+	 */
+	private long typestateInstanceTimeBudget;
+
+	/**
+	 * The time, in milliseconds, that solving a typestate rule for all of a
+	 * project's stream instances may take. Zero for no budget.
+	 */
+	private long typestateRuleTimeBudget;
+
+	/**
+	 * The time, in milliseconds, spent in the typestate solvers.
+	 */
+	private long typestateSolverTime;
+
 	public StreamAnalyzer() {
 		this(false);
 	}
@@ -193,15 +492,34 @@ public class StreamAnalyzer extends ASTVisitor {
 	}
 
 	/**
-	 * Analyzes this {@link StreamAnalyzer}'s streams.
+	 * Analyzes this {@link StreamAnalyzer}'s streams. Projects are analyzed
+	 * concurrently if more than one thread is to be used and the heap can
+	 * accommodate more than one project at a time.
 	 *
 	 * @param collector
-	 *            To exclude from the time certain parts of the analysis.
+	 *            To exclude from the time certain parts of the analysis. Ignored
+	 *            when projects are analyzed concurrently.
 	 * @return A {@link Map} of project's analyzed along with the entry points used.
 	 * @see #analyze().
+	 * @see #setNumberOfThreads(int)
+	 * @see #setProjectHeapBudget(long)
 	 */
 	public Map<IJavaProject, Collection<Entrypoint>> analyze(Optional<TimeCollector> collector,
 			IProgressMonitor monitor) throws CoreException {
+		// primordial classes are only shared during this run. Otherwise, the shared
+		// loaders would retain the class hierarchy they were first created for.
+		if (this.shouldSharePrimordialClassHierarchy())
+			this.sharedPrimordialClassLoaders = new HashMap<>();
+
+		try {
+			return this.analyzeProjects(collector, monitor);
+		} finally {
+			this.sharedPrimordialClassLoaders = null;
+		}
+	}
+
+	private Map<IJavaProject, Collection<Entrypoint>> analyzeProjects(Optional<TimeCollector> collector,
+			IProgressMonitor monitor) throws CoreException {
 		SubMonitor subMonitor = SubMonitor.convert(monitor, "Analyzing...", IProgressMonitor.UNKNOWN);
 
 		LOGGER.fine(() -> "Using N = " + this.getNForStreams() + ".");
@@ -212,108 +530,334 @@ public class StreamAnalyzer extends ASTVisitor {
 		Map<IJavaProject, Set<Stream>> projectToStreams = this.getStreamSet().stream().filter(s -> s.getStatus().isOK())
 				.collect(Collectors.groupingBy(Stream::getCreationJavaProject, Collectors.toSet()));
 
-		// process each project.
-		subMonitor.beginTask("Processing projects ...", projectToStreams.keySet().size());
+		// process the projects in a deterministic order.
+		List<IJavaProject> projects = projectToStreams.keySet().stream()
+				.sorted(Comparator.comparing(IJavaProject::getElementName)).collect(Collectors.toList());
 
-		for (IJavaProject project : projectToStreams.keySet()) {
-			// create the analysis engine for the project.
-			// exclude from the analysis because the IR will be built here.
+		// group the projects to be analyzed together.
+		List<List<IJavaProject>> projectGroups = this.shouldMergeProjects() ? groupRelatedProjects(projects)
+				: projects.stream().map(Collections::singletonList).collect(Collectors.toList());
+
+		Map<IJavaProject, Statistics> projectToStatistics = new ConcurrentHashMap<>();
+
+		// process each group of projects.
+		subMonitor.beginTask("Processing projects ...", projectGroups.size());
+
+		int numberOfConcurrentProjects = this.getNumberOfConcurrentProjects(projectGroups.size());
+
+		if (numberOfConcurrentProjects <= 1)
+			for (List<IJavaProject> projectGroup : projectGroups) {
+				Collection<Entrypoint> entryPoints = this.analyze(projectGroup,
+						getStreams(projectGroup, projectToStreams), projectToStatistics, collector,
+						subMonitor.split(1, SubMonitor.SUPPRESS_NONE));
+				projectGroup.forEach(project -> ret.put(project, entryPoints));
+			}
+		else {
+			LOGGER.info(() -> "Analyzing " + projectGroups.size() + " project groups using "
+					+ numberOfConcurrentProjects + " threads.");
+
+			if (collector.isPresent())
+				LOGGER.warning("Can't exclude time from concurrently analyzed projects.");
+
+			// the workers only check for cancellation; progress is reported here.
+			IProgressMonitor workerMonitor = new NullProgressMonitor() {
+				@Override
+				public boolean isCanceled() {
+					return subMonitor.isCanceled();
+				}
+			};
+
+			ExecutorService executor = Executors.newFixedThreadPool(numberOfConcurrentProjects);
 
-			collector.ifPresent(TimeCollector::start);
-			EclipseProjectAnalysisEngine<InstanceKey> engine = null;
 			try {
-				engine = new EclipseProjectAnalysisEngine<>(project, this.getNForStreams());
-				engine.buildAnalysisScope();
-			} catch (IOException e) {
-				LOGGER.log(Level.SEVERE, "Could not create analysis engine for: " + project.getElementName(), e);
-				throw new RuntimeException(e);
+				Map<List<IJavaProject>, Future<Collection<Entrypoint>>> projectGroupToFuture = new LinkedHashMap<>();
+
+				for (List<IJavaProject> projectGroup : projectGroups) {
+					Set<Stream> streams = getStreams(projectGroup, projectToStreams);
+					projectGroupToFuture.put(projectGroup, executor.submit(() -> this.analyze(projectGroup, streams,
+							projectToStatistics, Optional.empty(), workerMonitor)));
+				}
+
+				for (Entry<List<IJavaProject>, Future<Collection<Entrypoint>>> entry : projectGroupToFuture
+						.entrySet()) {
+					List<IJavaProject> projectGroup = entry.getKey();
+
+					try {
+						Collection<Entrypoint> entryPoints = entry.getValue().get();
+						projectGroup.forEach(project -> ret.put(project, entryPoints));
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new OperationCanceledException();
+					} catch (ExecutionException e) {
+						Throwable cause = e.getCause();
+
+						if (cause instanceof CoreException)
+							throw (CoreException) cause;
+						else if (cause instanceof RuntimeException)
+							throw (RuntimeException) cause;
+						else if (cause instanceof Error)
+							throw (Error) cause;
+
+						LOGGER.log(Level.SEVERE, "Exception encountered while analyzing: " + projectGroup, cause);
+						throw new RuntimeException(cause);
+					}
+
+					subMonitor.split(1, SubMonitor.SUPPRESS_NONE);
+				}
+			} finally {
+				executor.shutdownNow();
 			}
-			collector.ifPresent(TimeCollector::stop);
+		}
+
+		// merge the statistics.
+		this.setNumberOfProcessedStreamInstances(projectToStatistics.values().stream()
+				.mapToInt(Statistics::getNumberOfStreamInstancesProcessed).sum());
+		this.setNumberOfSkippedStreamInstances(projectToStatistics.values().stream()
+				.mapToInt(Statistics::getNumberOfStreamInstancesSkipped).sum());
+		this.setTypestateSolverTime(
+				projectToStatistics.values().stream().mapToLong(Statistics::getSolverTime).sum());
+
+		return ret;
+	}
+
+	/**
+	 * Analyzes the given streams of the given project.
+	 *
+	 * @param project
+	 *            The project to analyze.
+	 * @param streamSet
+	 *            The streams of the given project to analyze.
+	 * @param projectToStatistics
+	 *            Where to put the {@link Statistics} of analyzing the given
+	 *            project.
+	 * @param collector
+	 *            To exclude from the time certain parts of the analysis.
+	 * @return The entry points used to analyze the given project.
+	 */
+	protected Collection<Entrypoint> analyze(IJavaProject project, Set<Stream> streamSet,
+			Map<IJavaProject, Statistics> projectToStatistics, Optional<TimeCollector> collector,
+			IProgressMonitor monitor) throws CoreException {
+		return this.analyze(Collections.singletonList(project), streamSet, projectToStatistics, collector, monitor);
+	}
+
+	/**
+	 * Analyzes the given streams of the given projects together, i.e., using a
+	 * single {@link EclipseProjectAnalysisEngine} whose analysis scope merges
+	 * theirs.
+	 *
+	 * @param projects
+	 *            The projects to analyze. The {@link Statistics} are put under
+	 *            the first.
+	 * @param streamSet
+	 *            The streams of the given projects to analyze.
+	 * @param projectToStatistics
+	 *            Where to put the {@link Statistics} of analyzing the given
+	 *            projects.
+	 * @param collector
+	 *            To exclude from the time certain parts of the analysis.
+	 * @return The entry points used to analyze the given projects.
+	 */
+	protected Collection<Entrypoint> analyze(List<IJavaProject> projects, Set<Stream> streamSet,
+			Map<IJavaProject, Statistics> projectToStatistics, Optional<TimeCollector> collector,
+			IProgressMonitor monitor) throws CoreException {
+		IJavaProject project = projects.get(0);
+		SubMonitor subMonitor = SubMonitor.convert(monitor,
+				"Analyzing " + projects.stream().map(IJavaProject::getElementName).collect(Collectors.joining(", "))
+						+ "...",
+				IProgressMonitor.UNKNOWN);
+
+		// create the analysis engine for the projects.
+		// exclude from the analysis because the IR will be built here.
+
+		collector.ifPresent(TimeCollector::start);
+		EclipseProjectAnalysisEngine<InstanceKey> engine = null;
+		try {
+			engine = this.createAnalysisEngine(projects);
+		} catch (IOException e) {
+			LOGGER.log(Level.SEVERE, "Could not create analysis engine for: " + projects, e);
+			throw new RuntimeException(e);
+		}
+		collector.ifPresent(TimeCollector::stop);
+
+		engine.setCallGraphHeapBudget(this.getCallGraphHeapBudget());
+		engine.setCallGraphTimeBudget(this.getCallGraphTimeBudget());
+
+		// build the call graph for the project.
+		Collection<Entrypoint> entryPoints = null;
+		try {
+			entryPoints = this.buildCallGraph(engine, collector,
+					subMonitor.split(IProgressMonitor.UNKNOWN, SubMonitor.SUPPRESS_NONE));
+		} catch (CallGraphBudgetExceededException e) {
+			this.handleCallGraphBudgetExceeded(engine, streamSet, e);
+			return Collections.emptySet();
+		} catch (IOException | CoreException | CancelException e) {
+			LOGGER.log(Level.SEVERE,
+					"Exception encountered while building call graph for: " + project.getElementName() + ".", e);
+			throw new RuntimeException(e);
+		}
 
-			// build the call graph for the project.
-			Collection<Entrypoint> entryPoints = null;
+		if (entryPoints.isEmpty()) {
+			// add a status entry for each stream in the project
+			for (Stream stream : streamSet)
+				stream.addStatusEntry(PreconditionFailure.NO_ENTRY_POINT,
+						"Project: " + engine.getProject().getElementName() + " has no entry points.");
+			return entryPoints;
+		}
+
+		if (this.shouldAdaptNForStreams())
 			try {
-				entryPoints = this.buildCallGraph(engine, collector,
+				this.adaptNForStreams(engine, streamSet, entryPoints,
 						subMonitor.split(IProgressMonitor.UNKNOWN, SubMonitor.SUPPRESS_NONE));
-			} catch (IOException | CoreException | CancelException e) {
+			} catch (CallGraphBudgetExceededException e) {
+				this.handleCallGraphBudgetExceeded(engine, streamSet, e);
+				return Collections.emptySet();
+			} catch (InvalidClassFileException | IOException | CoreException | CancelException e) {
 				LOGGER.log(Level.SEVERE,
-						"Exception encountered while building call graph for: " + project.getElementName() + ".", e);
+						"Exception encountered while adapting N for project: " + project.getElementName() + ".", e);
 				throw new RuntimeException(e);
 			}
 
-			// save the entry points.
-			ret.put(project, entryPoints);
+		if (engine.isUsingFallbackPolicy()) {
+			LOGGER.warning(() -> "Analyzing: " + project.getElementName() + " using the fallback policy.");
+			// don't reuse the less precise call graph in subsequent analyses.
+			AnalysisEngineCache.remove(project);
+		}
+
+		OrderingInference orderingInference = new OrderingInference(engine.getClassHierarchy());
 
-			Set<Stream> streamSet = projectToStreams.get(project);
+		subMonitor.beginTask("Inferring initial stream attributes...", streamSet.size());
 
-			if (entryPoints.isEmpty()) {
-				// add a status entry for each stream in the project
-				for (Stream stream : streamSet)
-					stream.addStatusEntry(PreconditionFailure.NO_ENTRY_POINT,
-							"Project: " + engine.getProject().getElementName() + " has no entry points.");
-				return ret;
+		for (Iterator<Stream> iterator = streamSet.iterator(); iterator.hasNext();) {
+			Stream stream = iterator.next();
+			try {
+				stream.inferInitialAttributes(engine, orderingInference);
+			} catch (InvalidClassFileException | IOException e) {
+				LOGGER.log(Level.SEVERE, "Exception encountered while processing: " + stream.getCreation() + ".", e);
+				throw new RuntimeException(e);
+			} catch (UnhandledCaseException e) {
+				LOGGER.log(Level.WARNING, "Unhandled case encountered while processing: " + stream.getCreation(), e);
+				stream.addStatusEntry(PreconditionFailure.CURRENTLY_NOT_HANDLED,
+						"Stream: " + stream.getCreation() + " has an unhandled case: " + e.getMessage());
+			} catch (StreamCreationNotConsideredException e) {
+				LOGGER.log(Level.WARNING, "Unconsidered case encountered while processing: " + stream.getCreation(),
+						e);
+				// remove it from consideration.
+				iterator.remove();
+
+				// other projects may be analyzed concurrently.
+				synchronized (this.getStreamSet()) {
+					this.getStreamSet().remove(stream);
+				}
 			}
+			subMonitor.worked(1);
+		}
 
-			OrderingInference orderingInference = new OrderingInference(engine.getClassHierarchy());
+		// start the state machine for each valid stream in the project.
+		StreamStateMachine stateMachine = new StreamStateMachine();
+		stateMachine.setTypestateInstanceTimeBudget(this.getTypestateInstanceTimeBudget());
+		stateMachine.setTypestateRuleTimeBudget(this.getTypestateRuleTimeBudget());
+		stateMachine.setUseDemandDrivenTypestate(this.shouldUseDemandDrivenTypestate());
+		stateMachine.setUseProductTypestateRule(this.shouldUseProductTypestateRule());
+		try {
+			Map<TypestateRule, StreamStateMachine.Statistics> ruleToStats = stateMachine.start(
+					streamSet.parallelStream().filter(s -> s.getStatus().isOK()).collect(Collectors.toSet()), engine,
+					orderingInference, subMonitor.split(IProgressMonitor.UNKNOWN, SubMonitor.SUPPRESS_NONE));
+
+			// use just one the rules for the instances but all of them for the solver
+			// time.
+			assert !ruleToStats.isEmpty() : "Should have stats available.";
+			Statistics statistics = ruleToStats.values().iterator().next();
+			long solverTime = ruleToStats.values().stream().mapToLong(Statistics::getSolverTime).sum();
+
+			projectToStatistics.put(project, new Statistics(statistics.getNumberOfStreamInstancesProcessed(),
+					statistics.getNumberOfStreamInstancesSkipped(), solverTime));
+		} catch (PropertiesException | CancelException | NoniterableException | NoninstantiableException
+				| CannotExtractSpliteratorException | InvalidClassFileException | IOException e) {
+			LOGGER.log(Level.SEVERE, "Error while starting state machine.", e);
+			throw new RuntimeException(e);
+		}
+
+		// check preconditions.
+		SubMonitor checkMonitor = subMonitor.split(IProgressMonitor.UNKNOWN, SubMonitor.SUPPRESS_NONE);
+		checkMonitor.beginTask(Messages.CheckingPreconditions, streamSet.size());
 
-			subMonitor.beginTask("Inferring initial stream attributes...", streamSet.size());
+		for (Stream stream : streamSet.parallelStream().filter(s -> s.getStatus().isOK())
+				.collect(Collectors.toSet())) {
+			stream.check();
+			checkMonitor.worked(1);
+		}
 
-			for (Iterator<Stream> iterator = streamSet.iterator(); iterator.hasNext();) {
-				Stream stream = iterator.next();
+		return entryPoints;
+	}
+
+	/**
+	 * Increases the N to use for instances of {@link BaseStream} at the creation
+	 * sites of streams that the engine's current call graph can't distinguish,
+	 * rebuilding the call graph after each round. Stops once all streams are
+	 * distinguished, no creation site can be increased past the maximum N, or
+	 * the adaptation time budget is exhausted. A rebuild is bounded by the
+	 * remaining time. If it doesn't finish in time, the previous call graph is
+	 * kept along with the N's it was built with.
+	 *
+	 * @param engine
+	 *            The engine whose call graph has been built.
+	 * @param streamSet
+	 *            The streams of the engine's project.
+	 * @param entryPoints
+	 *            The {@link Entrypoint}s used to build the call graph.
+	 * @see #getMaxNForStreams()
+	 * @see #getNForStreamsAdaptationTimeBudget()
+	 */
+	protected void adaptNForStreams(EclipseProjectAnalysisEngine<InstanceKey> engine, Set<Stream> streamSet,
+			Collection<Entrypoint> entryPoints, IProgressMonitor monitor)
+			throws InvalidClassFileException, IOException, CoreException, CancelException {
+		long deadline = System.currentTimeMillis() + this.getNForStreamsAdaptationTimeBudget();
+
+		while (System.currentTimeMillis() < deadline) {
+			Set<Stream> impreciseStreams = findImpreciseStreams(engine, streamSet);
+
+			if (impreciseStreams.isEmpty())
+				break;
+
+			// the N's before this round.
+			Map<Pair<MethodReference, Integer>, Integer> callSiteToPreviousN = new HashMap<>();
+
+			for (Stream stream : impreciseStreams) {
+				Optional<SSAInvokeInstruction> instruction;
 				try {
-					stream.inferInitialAttributes(engine, orderingInference);
-				} catch (InvalidClassFileException | IOException e) {
-					LOGGER.log(Level.SEVERE, "Exception encountered while processing: " + stream.getCreation() + ".",
-							e);
-					throw new RuntimeException(e);
+					instruction = stream.getInstructionForCreation(engine);
 				} catch (UnhandledCaseException e) {
-					LOGGER.log(Level.WARNING, "Unhandled case encountered while processing: " + stream.getCreation(),
-							e);
-					stream.addStatusEntry(PreconditionFailure.CURRENTLY_NOT_HANDLED,
-							"Stream: " + stream.getCreation() + " has an unhandled case: " + e.getMessage());
-				} catch (StreamCreationNotConsideredException e) {
-					LOGGER.log(Level.WARNING, "Unconsidered case encountered while processing: " + stream.getCreation(),
-							e);
-					// remove it from consideration.
-					iterator.remove();
-					this.getStreamSet().remove(stream);
+					// leave it to the rest of the analysis.
+					continue;
 				}
-				subMonitor.worked(1);
-			}
-
-			// start the state machine for each valid stream in the project.
-			StreamStateMachine stateMachine = new StreamStateMachine();
-			try {
-				Map<TypestateRule, StreamStateMachine.Statistics> ruleToStats = stateMachine.start(
-						streamSet.parallelStream().filter(s -> s.getStatus().isOK()).collect(Collectors.toSet()),
-						engine, orderingInference,
-						subMonitor.split(IProgressMonitor.UNKNOWN, SubMonitor.SUPPRESS_NONE));
 
-				// use just one the rules.
-				assert !ruleToStats.isEmpty() : "Should have stats available.";
-				Statistics statistics = ruleToStats.values().iterator().next();
+				if (instruction.isPresent()) {
+					MethodReference enclosingMethod = stream.getEnclosingMethodReference();
+					int programCounter = instruction.get().getCallSite().getProgramCounter();
+					int n = engine.getNToUseForStreams(enclosingMethod, programCounter);
 
-				this.setNumberOfProcessedStreamInstances(statistics.getNumberOfStreamInstancesProcessed());
-				this.setNumberOfSkippedStreamInstances(statistics.getNumberOfStreamInstancesSkipped());
-			} catch (PropertiesException | CancelException | NoniterableException | NoninstantiableException
-					| CannotExtractSpliteratorException | InvalidClassFileException | IOException e) {
-				LOGGER.log(Level.SEVERE, "Error while starting state machine.", e);
-				throw new RuntimeException(e);
+					if (n < this.getMaxNForStreams()) {
+						LOGGER.info(() -> "Increasing N to: " + (n + 1) + " for: " + stream.getCreation() + ".");
+						callSiteToPreviousN.putIfAbsent(Pair.make(enclosingMethod, programCounter), n);
+						engine.setNToUseForStreams(enclosingMethod, programCounter, n + 1);
+					}
+				}
 			}
 
-			// check preconditions.
-			SubMonitor checkMonitor = subMonitor.split(IProgressMonitor.UNKNOWN, SubMonitor.SUPPRESS_NONE);
-			checkMonitor.beginTask(Messages.CheckingPreconditions, streamSet.size());
+			// the fallback policy overrides any increased N's.
+			if (callSiteToPreviousN.isEmpty() || engine.isUsingFallbackPolicy())
+				break;
 
-			for (Stream stream : streamSet.parallelStream().filter(s -> s.getStatus().isOK())
-					.collect(Collectors.toSet())) {
-				stream.check();
-				checkMonitor.worked(1);
-			}
+			// rebuild the call graph using the new N's within the remaining time.
+			long remainingTime = deadline - System.currentTimeMillis();
 
-			subMonitor.worked(1);
+			if (remainingTime <= 0 || !engine.rebuildSafeCallGraph(createCallGraphOptions(engine, entryPoints),
+					remainingTime, monitor)) {
+				// keep the N's the current call graph was built with.
+				callSiteToPreviousN.forEach((callSite, n) -> engine.setNToUseForStreams(callSite.fst, callSite.snd, n));
+				break;
+			}
 		}
-		return ret;
 	}
 
 	/**
@@ -336,15 +880,25 @@ public class StreamAnalyzer extends ASTVisitor {
 			collector.ifPresent(TimeCollector::start);
 			Set<Entrypoint> entryPoints;
 
-			// find the entry_points.txt in the project directory
-			File entryPointFile = getEntryPointsFile(engine.getProject().getResource().getLocation(),
-					ENTRY_POINT_FILENAME);
+			// find the entry_points.txt in the project directories.
+			List<File> entryPointFiles = new ArrayList<>();
+
+			for (IJavaProject project : engine.getProjects()) {
+				File entryPointFile = getEntryPointsFile(project.getResource().getLocation(), ENTRY_POINT_FILENAME);
 
-			// if the file was found,
-			if (entryPointFile != null) {
+				if (entryPointFile != null)
+					entryPointFiles.add(entryPointFile);
+			}
+
+			// if a file was found,
+			if (!entryPointFiles.isEmpty()) {
 				// find explicit entry points from entry_points.txt. Ignore the explicit
 				// (annotation-based) entry points.
-				entryPoints = findEntryPointsFromFile(engine.getClassHierarchy(), entryPointFile);
+				entryPoints = new HashSet<>();
+
+				for (File entryPointFile : entryPointFiles)
+					entryPoints.addAll(findEntryPointsFromFile(engine.getClassHierarchy(), entryPointFile));
+
 				entryPoints.forEach(ep -> LOGGER.info(() -> "Adding explicit entry point from file: " + ep));
 			} else {
 				// find explicit entry points.
@@ -392,28 +946,155 @@ public class StreamAnalyzer extends ASTVisitor {
 
 			collector.ifPresent(TimeCollector::stop);
 
-			// set options.
-			AnalysisOptions options = engine.getDefaultOptions(entryPoints);
-			// Turn off reflection analysis.
-			options.setReflectionOptions(ReflectionOptions.NONE);
-			options.getSSAOptions().setPiNodePolicy(SSAOptions.getAllBuiltInPiNodes());
+			// if the (cached) engine's call graph was built using the same entry points.
+			if (engine.getCallGraph() != null && engine.getCallGraphEntryPoints().equals(entryPoints))
+				LOGGER.info(() -> "Reusing call graph for project: " + engine.getProject().getElementName());
+			else
+				buildCallGraph(engine, entryPoints, monitor);
 
-			try {
-				engine.buildSafeCallGraph(options, SubMonitor.convert(monitor, "Building call graph", 1));
-			} catch (IllegalStateException e) {
-				LOGGER.log(Level.SEVERE, e, () -> "Exception encountered while building call graph for project: "
-						+ engine.getProject().getElementName());
-				throw e;
-			}
 			this.enginesWithBuiltCallGraphsToEntrypointsUsed.put(engine, entryPoints);
 		}
 		return this.enginesWithBuiltCallGraphsToEntrypointsUsed.get(engine);
 	}
 
+	/**
+	 * Computes the key under which the {@link EclipseProjectAnalysisEngine} for
+	 * the given projects is cached.
+	 *
+	 * @param projects
+	 *            The projects whose engine's key to compute.
+	 * @return The keys of the given projects, joined.
+	 */
+	private String computeKey(List<IJavaProject> projects) throws IOException, CoreException {
+		StringJoiner joiner = new StringJoiner(";");
+
+		for (IJavaProject project : projects)
+			joiner.add(AnalysisEngineCache.computeKey(project, this.getNForStreams(),
+					this.shouldUseStreamLibrarySummaries()));
+
+		return joiner.toString();
+	}
+
+	/**
+	 * Creates the {@link EclipseProjectAnalysisEngine} for the given project with
+	 * its analysis scope built. If call graphs are to be cached, a cached engine
+	 * whose project's source and class files, classpath, and N are unchanged is
+	 * reused instead, along with its call graph and pointer analysis. If
+	 * analyzing incrementally, any cached engine created using the same N and
+	 * summaries that hasn't been invalidated by a change to the Java model is
+	 * reused without computing its key. The call graph of a reused engine is
+	 * discarded if it was built using N's adapted by a previous run.
+	 *
+	 * @param project
+	 *            The project for which to create the engine.
+	 * @return An {@link EclipseProjectAnalysisEngine} for the given project.
+	 */
+	protected EclipseProjectAnalysisEngine<InstanceKey> createAnalysisEngine(IJavaProject project)
+			throws IOException, CoreException {
+		return this.createAnalysisEngine(Collections.singletonList(project));
+	}
+
+	/**
+	 * Creates the {@link EclipseProjectAnalysisEngine} for the given projects,
+	 * whose analysis scopes are merged, with its analysis scope built. Caching is
+	 * as for a single project, except that an engine of more than one project is
+	 * always looked up by key even if analyzing incrementally, as changes to the
+	 * Java model only invalidate the engines of changed projects and of those
+	 * requiring them.
+	 *
+	 * @param projects
+	 *            The projects for which to create the engine. The engine is
+	 *            cached under the first.
+	 * @return An {@link EclipseProjectAnalysisEngine} for the given projects.
+	 * @see #createAnalysisEngine(IJavaProject)
+	 */
+	protected EclipseProjectAnalysisEngine<InstanceKey> createAnalysisEngine(List<IJavaProject> projects)
+			throws IOException, CoreException {
+		IJavaProject project = projects.get(0);
+		List<IJavaProject> mergedProjects = projects.subList(1, projects.size());
+		String key = null;
+
+		// engines cached before the invalidator was installed may be stale.
+		boolean invalidatorInstalled = AnalysisEngineCacheInvalidator.isInstalled();
+
+		if (this.shouldAnalyzeIncrementally())
+			AnalysisEngineCacheInvalidator.install();
+
+		if (this.shouldAnalyzeIncrementally() && mergedProjects.isEmpty() && invalidatorInstalled) {
+			Optional<EclipseProjectAnalysisEngine<InstanceKey>> cachedEngine = AnalysisEngineCache.get(project,
+					this.getNForStreams(), this.shouldUseStreamLibrarySummaries());
+
+			if (cachedEngine.isPresent() && cachedEngine.get().getProjects().equals(projects)) {
+				LOGGER.info(() -> "Reusing analysis engine for: " + project.getElementName());
+				// N's adapted by a previous run don't carry over.
+				cachedEngine.get().clearAdaptedNToUseForStreams();
+				return cachedEngine.get();
+			}
+
+			key = this.computeKey(projects);
+		} else if (this.shouldCacheCallGraphs()) {
+			key = this.computeKey(projects);
+			Optional<EclipseProjectAnalysisEngine<InstanceKey>> cachedEngine = AnalysisEngineCache.get(project, key);
+
+			if (cachedEngine.isPresent()) {
+				LOGGER.info(() -> "Reusing analysis engine for: " + projects);
+				// N's adapted by a previous run don't carry over.
+				cachedEngine.get().clearAdaptedNToUseForStreams();
+				return cachedEngine.get();
+			}
+		}
+
+		EclipseProjectAnalysisEngine<InstanceKey> engine = new EclipseProjectAnalysisEngine<>(project,
+				this.getNForStreams());
+		engine.setMergedProjects(mergedProjects);
+
+		// cached engines outlive the run and thus don't share primordial classes.
+		if (key == null)
+			engine.setSharedPrimordialClassLoaders(this.sharedPrimordialClassLoaders);
+
+		engine.setUseStreamLibrarySummaries(this.shouldUseStreamLibrarySummaries());
+		engine.buildAnalysisScope();
+
+		if (key != null)
+			AnalysisEngineCache.put(project, key, engine);
+
+		return engine;
+	}
+
+	public long getCallGraphHeapBudget() {
+		return this.callGraphHeapBudget;
+	}
+
+	public long getCallGraphTimeBudget() {
+		return this.callGraphTimeBudget;
+	}
+
+	public int getMaxNForStreams() {
+		return this.maxNForStreams;
+	}
+
 	public int getNForStreams() {
 		return this.nForStreams;
 	}
 
+	public long getNForStreamsAdaptationTimeBudget() {
+		return this.nForStreamsAdaptationTimeBudget;
+	}
+
+	/**
+	 * Returns the number of projects to analyze concurrently.
+	 *
+	 * @param numberOfProjects
+	 *            The number of projects to be analyzed.
+	 * @return The number of threads to use, bounded by the number of projects
+	 *         and by the number of projects whose heap budget fits into the
+	 *         maximum heap.
+	 */
+	protected int getNumberOfConcurrentProjects(int numberOfProjects) {
+		long projectsFittingIntoHeap = Math.max(1, Runtime.getRuntime().maxMemory() / this.getProjectHeapBudget());
+		return (int) Math.min(Math.min(this.getNumberOfThreads(), numberOfProjects), projectsFittingIntoHeap);
+	}
+
 	public int getNumberOfProcessedStreamInstances() {
 		return this.numberOfProcessedStreamInstances;
 	}
@@ -422,10 +1103,80 @@ public class StreamAnalyzer extends ASTVisitor {
 		return this.numberOfSkippedStreamInstances;
 	}
 
+	public int getNumberOfThreads() {
+		return this.numberOfThreads;
+	}
+
+	public long getProjectHeapBudget() {
+		return this.projectHeapBudget;
+	}
+
 	public Set<Stream> getStreamSet() {
 		return this.streamSet;
 	}
 
+	public long getTypestateInstanceTimeBudget() {
+		return this.typestateInstanceTimeBudget;
+	}
+
+	public long getTypestateRuleTimeBudget() {
+		return this.typestateRuleTimeBudget;
+	}
+
+	public long getTypestateSolverTime() {
+		return this.typestateSolverTime;
+	}
+
+	/**
+	 * Marks the given streams as not analyzable because the call graph of their
+	 * project can't be built within budget.
+	 */
+	private void handleCallGraphBudgetExceeded(EclipseProjectAnalysisEngine<InstanceKey> engine,
+			Set<Stream> streamSet, CallGraphBudgetExceededException e) {
+		IJavaProject project = engine.getProject();
+		LOGGER.log(Level.WARNING, "Call graph budget exceeded for: " + project.getElementName() + ".", e);
+
+		// don't reuse the partially built engine.
+		this.enginesWithBuiltCallGraphsToEntrypointsUsed.remove(engine);
+		AnalysisEngineCache.remove(project);
+
+		for (Stream stream : streamSet)
+			stream.addStatusEntry(PreconditionFailure.CALL_GRAPH_BUDGET_EXCEEDED,
+					"Project: " + project.getElementName() + " exceeds its call graph budget: " + e.getMessage());
+	}
+
+	/**
+	 * Set whether the N to use for instances of {@link BaseStream} should be
+	 * increased at the creation sites of streams that the call graph can't
+	 * distinguish, up to the maximum N and within the adaptation time budget.
+	 *
+	 * @param adaptNForStreams
+	 *            True iff N should be adapted.
+	 */
+	public void setAdaptNForStreams(boolean adaptNForStreams) {
+		this.adaptNForStreams = adaptNForStreams;
+	}
+
+	public void setCacheCallGraphs(boolean cacheCallGraphs) {
+		this.cacheCallGraphs = cacheCallGraphs;
+	}
+
+	public void setCallGraphHeapBudget(long callGraphHeapBudget) {
+		if (callGraphHeapBudget < 0)
+			throw new IllegalArgumentException(
+					"Call graph heap budget must be nonnegative: " + callGraphHeapBudget + ".");
+
+		this.callGraphHeapBudget = callGraphHeapBudget;
+	}
+
+	public void setCallGraphTimeBudget(long callGraphTimeBudget) {
+		if (callGraphTimeBudget < 0)
+			throw new IllegalArgumentException(
+					"Call graph time budget must be nonnegative: " + callGraphTimeBudget + ".");
+
+		this.callGraphTimeBudget = callGraphTimeBudget;
+	}
+
 	public void setFindImplicitBenchmarkEntryPoints(boolean findImplicitBenchmarkEntryPoints) {
 		this.findImplicitBenchmarkEntryPoints = findImplicitBenchmarkEntryPoints;
 	}
@@ -442,10 +1193,33 @@ public class StreamAnalyzer extends ASTVisitor {
 		this.findImplicitTestEntryPoints = findImplicitTestEntryPoints;
 	}
 
+	public void setIncremental(boolean incremental) {
+		this.incremental = incremental;
+	}
+
+	public void setMergeProjects(boolean mergeProjects) {
+		this.mergeProjects = mergeProjects;
+	}
+
+	public void setMaxNForStreams(int maxNForStreams) {
+		if (maxNForStreams < 1)
+			throw new IllegalArgumentException("Maximum N must be positive: " + maxNForStreams + ".");
+
+		this.maxNForStreams = maxNForStreams;
+	}
+
 	protected void setNForStreams(int nForStreams) {
 		this.nForStreams = nForStreams;
 	}
 
+	public void setNForStreamsAdaptationTimeBudget(long nForStreamsAdaptationTimeBudget) {
+		if (nForStreamsAdaptationTimeBudget < 0)
+			throw new IllegalArgumentException(
+					"Adaptation time budget must be nonnegative: " + nForStreamsAdaptationTimeBudget + ".");
+
+		this.nForStreamsAdaptationTimeBudget = nForStreamsAdaptationTimeBudget;
+	}
+
 	protected void setNumberOfProcessedStreamInstances(int numberOfProcessedStreamInstances) {
 		this.numberOfProcessedStreamInstances = numberOfProcessedStreamInstances;
 	}
@@ -454,6 +1228,103 @@ public class StreamAnalyzer extends ASTVisitor {
 		this.numberOfSkippedStreamInstances = numberOfSkippedStreamInstances;
 	}
 
+	public void setNumberOfThreads(int numberOfThreads) {
+		if (numberOfThreads < 1)
+			throw new IllegalArgumentException("Number of threads must be positive: " + numberOfThreads + ".");
+
+		this.numberOfThreads = numberOfThreads;
+	}
+
+	public void setProjectHeapBudget(long projectHeapBudget) {
+		if (projectHeapBudget < 1)
+			throw new IllegalArgumentException("Project heap budget must be positive: " + projectHeapBudget + ".");
+
+		this.projectHeapBudget = projectHeapBudget;
+	}
+
+	/**
+	 * Set whether the primordial part of the class hierarchy should be shared
+	 * among {@link EclipseProjectAnalysisEngine}s using the same JRE. Only the
+	 * engines created during the same run of
+	 * {@link #analyze(Optional, IProgressMonitor)} that aren't cached share it.
+	 * Has no effect if more than one thread is used.
+	 *
+	 * @param sharePrimordialClassHierarchy
+	 *            True iff primordial classes should be shared.
+	 */
+	public void setSharePrimordialClassHierarchy(boolean sharePrimordialClassHierarchy) {
+		this.sharePrimordialClassHierarchy = sharePrimordialClassHierarchy;
+	}
+
+	/**
+	 * Set the time that solving a typestate rule for a single stream instance may
+	 * take. The streams of instances exceeding it aren't refactored, while the
+	 * analysis of the remaining streams completes.
+	 *
+	 * @param typestateInstanceTimeBudget
+	 *            The time budget in milliseconds or zero for none.
+	 */
+	public void setTypestateInstanceTimeBudget(long typestateInstanceTimeBudget) {
+		if (typestateInstanceTimeBudget < 0)
+			throw new IllegalArgumentException(
+					"Typestate instance time budget must be nonnegative: " + typestateInstanceTimeBudget + ".");
+
+		this.typestateInstanceTimeBudget = typestateInstanceTimeBudget;
+	}
+
+	/**
+	 * Set the time that solving a typestate rule for all of a project's stream
+	 * instances may take. Once exceeded, the streams of the remaining instances
+	 * aren't refactored.
+	 *
+	 * @param typestateRuleTimeBudget
+	 *            The time budget in milliseconds or zero for none.
+	 */
+	public void setTypestateRuleTimeBudget(long typestateRuleTimeBudget) {
+		if (typestateRuleTimeBudget < 0)
+			throw new IllegalArgumentException(
+					"Typestate rule time budget must be nonnegative: " + typestateRuleTimeBudget + ".");
+
+		this.typestateRuleTimeBudget = typestateRuleTimeBudget;
+	}
+
+	protected void setTypestateSolverTime(long typestateSolverTime) {
+		this.typestateSolverTime = typestateSolverTime;
+	}
+
+	public void setUseDemandDrivenTypestate(boolean useDemandDrivenTypestate) {
+		this.useDemandDrivenTypestate = useDemandDrivenTypestate;
+	}
+
+	public void setUseProductTypestateRule(boolean useProductTypestateRule) {
+		this.useProductTypestateRule = useProductTypestateRule;
+	}
+
+	/**
+	 * Set whether the {@link java.util.stream} pipeline implementation should be
+	 * bypassed using summaries of its operations when building call graphs. Doing
+	 * so produces smaller call graphs faster at the expense of not analyzing the
+	 * library's internal behavior.
+	 *
+	 * @param useStreamLibrarySummaries
+	 *            True iff stream library summaries should be used.
+	 */
+	public void setUseStreamLibrarySummaries(boolean useStreamLibrarySummaries) {
+		this.useStreamLibrarySummaries = useStreamLibrarySummaries;
+	}
+
+	public boolean shouldAdaptNForStreams() {
+		return this.adaptNForStreams;
+	}
+
+	public boolean shouldAnalyzeIncrementally() {
+		return this.incremental;
+	}
+
+	public boolean shouldCacheCallGraphs() {
+		return this.cacheCallGraphs || this.shouldAnalyzeIncrementally();
+	}
+
 	public boolean shouldFindImplicitBenchmarkEntryPoints() {
 		return this.findImplicitBenchmarkEntryPoints;
 	}
@@ -470,6 +1341,27 @@ public class StreamAnalyzer extends ASTVisitor {
 		return this.findImplicitTestEntryPoints;
 	}
 
+	public boolean shouldMergeProjects() {
+		return this.mergeProjects;
+	}
+
+	public boolean shouldSharePrimordialClassHierarchy() {
+		// shared primordial classes aren't thread-safe.
+		return this.sharePrimordialClassHierarchy && this.getNumberOfThreads() <= 1;
+	}
+
+	public boolean shouldUseDemandDrivenTypestate() {
+		return this.useDemandDrivenTypestate;
+	}
+
+	public boolean shouldUseProductTypestateRule() {
+		return this.useProductTypestateRule;
+	}
+
+	public boolean shouldUseStreamLibrarySummaries() {
+		return this.useStreamLibrarySummaries;
+	}
+
 	/**
 	 * @see org.eclipse.jdt.core.dom.ASTVisitor#visit(org.eclipse.jdt.core.dom.MethodInvocation)
 	 */
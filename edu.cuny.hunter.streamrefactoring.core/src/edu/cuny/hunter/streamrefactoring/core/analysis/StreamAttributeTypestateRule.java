@@ -77,4 +77,22 @@ public abstract class StreamAttributeTypestateRule extends TypestateRule {
 		this.getTypeStateAutomaton().addTransition(transition);
 		return transition;
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Selects the state of an instance given its state and that of its
+	 * predecessor.
+	 *
+	 * @param state1
+	 *            The state of the instance.
+	 * @param state2
+	 *            The state of its predecessor.
+	 * @return The given state of the instance unless it's bottom, in which case
+	 *         that of its predecessor.
+	 */
+	protected IDFAState selectState(IDFAState state1, IDFAState state2) {
+		if (state1.getName().equals(BOTTOM_STATE_NAME))
+			return state2;
+		else
+			return state1;
+	}
+}
@@ -0,0 +1,147 @@
+package edu.cuny.hunter.streamrefactoring.core.analysis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import com.ibm.safe.dfa.DFATransition;
+import com.ibm.safe.dfa.IDFAState;
+import com.ibm.safe.dfa.IDFATransition;
+import com.ibm.safe.dfa.events.IEvent;
+import com.ibm.wala.classLoader.IClass;
+
+/**
+ * A {@link StreamAttributeTypestateRule} whose automaton is the product of the
+ * automata of other such rules. As such, a single solver pass yields the
+ * possible states of all of the component rules.
+ *
+ * @apiNote The component rules' events must be disjoint, i.e., each event
+ *          changes the state of only one component.
+ */
+public class StreamProductTypeStateRule extends StreamAttributeTypestateRule {
+
+	protected List<StreamAttributeTypestateRule> componentRules;
+
+	protected Map<List<IDFAState>, IDFAState> componentStatesToDFAStateMap;
+
+	protected Map<IDFAState, List<IDFAState>> dfaStateToComponentStatesMap;
+
+	public StreamProductTypeStateRule(IClass streamClass) {
+		this(streamClass, new StreamExecutionModeTypeStateRule(streamClass),
+				new StreamOrderingTypeStateRule(streamClass));
+	}
+
+	public StreamProductTypeStateRule(IClass streamClass, StreamAttributeTypestateRule... componentRules) {
+		super(streamClass, Arrays.stream(componentRules).map(StreamAttributeTypestateRule::getName)
+				.collect(Collectors.joining(" and ")));
+		this.componentRules = Arrays.asList(componentRules);
+		this.componentStatesToDFAStateMap = new HashMap<>();
+		this.dfaStateToComponentStatesMap = new HashMap<>();
+		this.addProductAutomaton();
+	}
+
+	@Override
+	protected void addAutomaton() {
+		// the automaton is the product of those of the component rules, which
+		// aren't available yet.
+	}
+
+	@Override
+	protected void addPossibleAttributes(Stream stream, Collection<IDFAState> states) {
+		super.addPossibleAttributes(stream, states);
+
+		// project the states onto each component rule.
+		for (int i = 0; i < this.componentRules.size(); i++) {
+			int component = i;
+			List<IDFAState> componentStates = states.stream().map(s -> this.getComponentStates(s).get(component))
+					.distinct().collect(Collectors.toList());
+			this.componentRules.get(i).addPossibleAttributes(stream, componentStates);
+		}
+	}
+
+	protected void addProductAutomaton() {
+		// the events of the components.
+		for (StreamAttributeTypestateRule rule : this.componentRules)
+			for (IEvent event : rule.getTypeStateAutomaton().getEvents())
+				this.getTypeStateAutomaton().addEvent(event);
+
+		// the states, i.e., each combination of component states.
+		List<List<IDFAState>> combinations = Collections.singletonList(Collections.emptyList());
+
+		for (StreamAttributeTypestateRule rule : this.componentRules) {
+			List<List<IDFAState>> extendedCombinations = new ArrayList<>();
+
+			for (List<IDFAState> combination : combinations)
+				for (IDFAState state : rule.getTypeStateAutomaton().getStates()) {
+					List<IDFAState> extendedCombination = new ArrayList<>(combination);
+					extendedCombination.add(state);
+					extendedCombinations.add(extendedCombination);
+				}
+
+			combinations = extendedCombinations;
+		}
+
+		List<IDFAState> initialComponentStates = this.componentRules.stream()
+				.map(r -> r.getTypeStateAutomaton().initialState()).collect(Collectors.toList());
+
+		for (List<IDFAState> combination : combinations) {
+			String stateName = combination.stream().map(IDFAState::getName)
+					.collect(Collectors.joining(",", "(", ")"));
+			IDFAState state = this.addState(stateName, combination.equals(initialComponentStates));
+
+			this.componentStatesToDFAStateMap.put(combination, state);
+			this.dfaStateToComponentStatesMap.put(state, combination);
+		}
+
+		// the transitions, i.e., those of each component with the other components
+		// unchanged.
+		for (List<IDFAState> combination : combinations)
+			for (int i = 0; i < this.componentRules.size(); i++)
+				for (IDFATransition componentTransition : this.componentRules.get(i).getTypeStateAutomaton()
+						.getTransitions())
+					if (componentTransition.getSource().equals(combination.get(i).getName())) {
+						List<IDFAState> destination = new ArrayList<>(combination);
+						destination.set(i, this.findComponentState(i, componentTransition.getDestination()));
+
+						IDFATransition transition = new DFATransition();
+						transition.setSource(this.componentStatesToDFAStateMap.get(combination));
+						transition.setEvent(componentTransition.getEvent());
+						transition.setDestination(this.componentStatesToDFAStateMap.get(destination));
+
+						this.getTypeStateAutomaton().addTransition(transition);
+					}
+	}
+
+	private IDFAState findComponentState(int component, String stateName) {
+		return this.componentRules.get(component).getTypeStateAutomaton().getStates().stream()
+				.filter(s -> s.getName().equals(stateName)).findFirst().orElseThrow(() -> new IllegalStateException(
+						"Can't find state: " + stateName + " of rule: " + this.componentRules.get(component)));
+	}
+
+	protected List<IDFAState> getComponentStates(IDFAState state) {
+		return this.dfaStateToComponentStatesMap.get(state);
+	}
+
+	public List<StreamAttributeTypestateRule> getComponentRules() {
+		return Collections.unmodifiableList(this.componentRules);
+	}
+
+	@Override
+	protected IDFAState selectState(IDFAState state1, IDFAState state2) {
+		List<IDFAState> componentStates1 = this.getComponentStates(state1);
+		List<IDFAState> componentStates2 = this.getComponentStates(state2);
+		List<IDFAState> selectedComponentStates = new ArrayList<>(componentStates1.size());
+
+		// select the state of each component separately.
+		for (int i = 0; i < this.componentRules.size(); i++)
+			selectedComponentStates.add(
+					this.componentRules.get(i).selectState(componentStates1.get(i), componentStates2.get(i)));
+
+		return this.componentStatesToDFAStateMap.get(selectedComponentStates);
+	}
+}
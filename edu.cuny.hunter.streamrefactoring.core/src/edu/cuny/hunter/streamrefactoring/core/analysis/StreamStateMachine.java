@@ -1,28 +1,31 @@
 package edu.cuny.hunter.streamrefactoring.core.analysis;
 
 import static com.ibm.safe.typestate.core.AbstractWholeProgramSolver.DUMMY_ZERO;
-import static edu.cuny.hunter.streamrefactoring.core.analysis.StreamAttributeTypestateRule.BOTTOM_STATE_NAME;
 
 import java.io.IOException;
 import java.io.UTFDataFormatException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.function.BinaryOperator;
-import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.SubMonitor;
 import org.eclipse.jdt.core.JavaModelException;
 
@@ -30,7 +33,6 @@ import com.google.common.collect.HashBasedTable;
 import com.google.common.collect.Table;
 import com.ibm.safe.Factoid;
 import com.ibm.safe.ICFGSupergraph;
-import com.ibm.safe.controller.ISafeSolver;
 import com.ibm.safe.dfa.IDFAState;
 import com.ibm.safe.internal.exceptions.MaxFindingsException;
 import com.ibm.safe.internal.exceptions.PropertiesException;
@@ -43,6 +45,7 @@ import com.ibm.safe.rules.TypestateRule;
 import com.ibm.safe.typestate.base.BaseFactoid;
 import com.ibm.safe.typestate.core.BenignOracle;
 import com.ibm.safe.typestate.core.TypeStateProperty;
+import com.ibm.safe.typestate.core.TypeStatePropertyContext;
 import com.ibm.safe.typestate.core.TypeStateResult;
 import com.ibm.safe.typestate.options.TypeStateOptions;
 import com.ibm.wala.analysis.typeInference.JavaPrimitiveType;
@@ -51,9 +54,11 @@ import com.ibm.wala.classLoader.CallSiteReference;
 import com.ibm.wala.classLoader.IClass;
 import com.ibm.wala.classLoader.IMethod;
 import com.ibm.wala.classLoader.NewSiteReference;
+import com.ibm.wala.classLoader.SyntheticMethod;
 import com.ibm.wala.client.AnalysisEngine;
 import com.ibm.wala.ipa.callgraph.CGNode;
 import com.ibm.wala.ipa.callgraph.CallGraph;
+import com.ibm.wala.ipa.callgraph.propagation.AllocationSite;
 import com.ibm.wala.ipa.callgraph.propagation.InstanceFieldPointerKey;
 import com.ibm.wala.ipa.callgraph.propagation.InstanceKey;
 import com.ibm.wala.ipa.callgraph.propagation.NormalAllocationInNode;
@@ -63,7 +68,6 @@ import com.ibm.wala.ipa.cfg.BasicBlockInContext;
 import com.ibm.wala.ipa.cha.IClassHierarchy;
 import com.ibm.wala.ipa.modref.ModRef;
 import com.ibm.wala.shrikeCT.InvalidClassFileException;
-import com.ibm.wala.ssa.DefUse;
 import com.ibm.wala.ssa.IR;
 import com.ibm.wala.ssa.ISSABasicBlock;
 import com.ibm.wala.ssa.SSAAbstractInvokeInstruction;
@@ -85,6 +89,7 @@ import com.ibm.wala.util.strings.Atom;
 
 import edu.cuny.hunter.streamrefactoring.core.safe.ModifiedBenignOracle;
 import edu.cuny.hunter.streamrefactoring.core.safe.NoApplicationCodeExistsInCallStringsException;
+import edu.cuny.hunter.streamrefactoring.core.safe.TrackingUniqueSolver;
 import edu.cuny.hunter.streamrefactoring.core.safe.TypestateSolverFactory;
 import edu.cuny.hunter.streamrefactoring.core.utils.LoggerNames;
 import edu.cuny.hunter.streamrefactoring.core.wala.CallStringWithReceivers;
@@ -92,13 +97,143 @@ import edu.cuny.hunter.streamrefactoring.core.wala.EclipseProjectAnalysisEngine;
 
 public class StreamStateMachine {
 
-	public class Statistics {
+	/**
+	 * A behavioral parameter passed to a stream pipeline, e.g., a lambda
+	 * expression.
+	 */
+	private static class BehavioralParameter {
+		/**
+		 * The method passing the behavioral parameter.
+		 */
+		private MethodReference declaredTargetOfCaller;
+
+		/**
+		 * The call defining the behavioral parameter.
+		 */
+		private SSAInstruction definition;
+
+		/**
+		 * The instances whose pipeline is passed the behavioral parameter.
+		 */
+		private Iterable<InstanceKey> instances;
+
+		private Set<CGNode> possibleTargets = Collections.emptySet();
+
+		public BehavioralParameter(Iterable<InstanceKey> instances, MethodReference declaredTargetOfCaller,
+				SSAInstruction definition) {
+			this.instances = instances;
+			this.declaredTargetOfCaller = declaredTargetOfCaller;
+			this.definition = definition;
+		}
+
+		public MethodReference getDeclaredTargetOfCaller() {
+			return this.declaredTargetOfCaller;
+		}
+
+		public SSAInstruction getDefinition() {
+			return this.definition;
+		}
+
+		public Iterable<InstanceKey> getInstances() {
+			return this.instances;
+		}
+
+		/**
+		 * Returns the possible targets of the behavioral parameter, e.g., the
+		 * implementations of a lambda expression.
+		 */
+		public Set<CGNode> getPossibleTargets() {
+			return this.possibleTargets;
+		}
+
+		public void setPossibleTargets(Set<CGNode> possibleTargets) {
+			this.possibleTargets = possibleTargets;
+		}
+	}
+
+	/**
+	 * The facts needed from the result of solving a typestate rule. Unlike the
+	 * result, they don't reference its supergraphs or domains.
+	 */
+	private static class ExtractedFacts {
+		private List<List<Pair<BasicBlockInContext<IExplodedBasicBlock>, IDFAState>>> instanceStates;
+
+		private List<InstanceKey> instances;
+
+		private Set<InstanceKey> instancesOverBudget;
+
+		private Statistics statistics;
+
+		private Map<BasicBlockInContext<IExplodedBasicBlock>, Pair<CGNode, ISSABasicBlock>> terminalBlocksInContext;
+
+		public ExtractedFacts(Statistics statistics, List<InstanceKey> instances,
+				List<List<Pair<BasicBlockInContext<IExplodedBasicBlock>, IDFAState>>> instanceStates,
+				Map<BasicBlockInContext<IExplodedBasicBlock>, Pair<CGNode, ISSABasicBlock>> terminalBlocksInContext,
+				Set<InstanceKey> instancesOverBudget) {
+			this.statistics = statistics;
+			this.instances = instances;
+			this.instanceStates = instanceStates;
+			this.terminalBlocksInContext = terminalBlocksInContext;
+			this.instancesOverBudget = instancesOverBudget;
+		}
+
+		/**
+		 * Returns the blocks in context paired with the states of each instance
+		 * there, in the order of {@link #getInstances()}.
+		 */
+		public List<List<Pair<BasicBlockInContext<IExplodedBasicBlock>, IDFAState>>> getInstanceStates() {
+			return this.instanceStates;
+		}
+
+		public List<InstanceKey> getInstances() {
+			return this.instances;
+		}
+
+		/**
+		 * Returns the instances skipped because solving for them exceeded a time
+		 * budget. They're not among {@link #getInstances()}.
+		 */
+		public Set<InstanceKey> getInstancesOverBudget() {
+			return this.instancesOverBudget;
+		}
+
+		public Statistics getStatistics() {
+			return this.statistics;
+		}
+
+		/**
+		 * Returns the blocks in context of the terminal operation call blocks
+		 * along with those blocks and their nodes.
+		 */
+		public Map<BasicBlockInContext<IExplodedBasicBlock>, Pair<CGNode, ISSABasicBlock>> getTerminalBlocksInContext() {
+			return this.terminalBlocksInContext;
+		}
+	}
+
+	public static class Statistics {
+		/**
+		 * The number of stream instances the solver produced a result for. Those
+		 * over a typestate time budget are included even though their result is
+		 * partial or missing; their streams fail with
+		 * {@link PreconditionFailure#TYPESTATE_BUDGET_EXCEEDED} instead.
+		 */
 		private int numberOfStreamInstancesProcessed;
+
+		/**
+		 * The number of stream instances the solver skipped as benign.
+		 */
 		private int numberOfStreamInstancesSkipped;
 
-		public Statistics(int numberOfStreamInstancesProcessed, int numberOfStreamInstancesSkipped) {
+		/**
+		 * The time, in milliseconds, spent in the typestate solver.
+		 */
+		private long solverTime;
+
+		public Statistics(int numberOfStreamInstancesProcessed, int numberOfStreamInstancesSkipped,
+				long solverTime) {
 			this.numberOfStreamInstancesProcessed = numberOfStreamInstancesProcessed;
 			this.numberOfStreamInstancesSkipped = numberOfStreamInstancesSkipped;
+			this.solverTime = solverTime;
 		}
 
 		public int getNumberOfStreamInstancesProcessed() {
@@ -108,6 +243,10 @@ public class StreamStateMachine {
 		public int getNumberOfStreamInstancesSkipped() {
 			return this.numberOfStreamInstancesSkipped;
 		}
+
+		public long getSolverTime() {
+			return this.solverTime;
+		}
 	}
 
 	@SuppressWarnings("unused")
@@ -213,6 +352,21 @@ public class StreamStateMachine {
 		// @formatter:on
 	}
 
+	/**
+	 * The typestate rules to use.
+	 *
+	 * @param streamClass    The class of streams.
+	 * @param useProductRule True iff a single rule whose automaton is the product
+	 *                       of those of the individual rules should be used.
+	 */
+	protected static StreamAttributeTypestateRule[] createStreamAttributeTypestateRules(IClass streamClass,
+			boolean useProductRule) {
+		if (useProductRule)
+			return new StreamAttributeTypestateRule[] { new StreamProductTypeStateRule(streamClass) };
+		else
+			return createStreamAttributeTypestateRules(streamClass);
+	}
+
 	private static boolean deriveRomForScalarMethod(SSAInvokeInstruction invokeInstruction)
 			throws UnknownIfReduceOrderMattersException {
 		MethodReference declaredTarget = invokeInstruction.getCallSite().getDeclaredTarget();
@@ -327,43 +481,123 @@ public class StreamStateMachine {
 		return ret;
 	}
 
-	// FIXME: The performance of this method is not good. We should build a map
-	// between block numbers and the corresponding basicBlockInContext. But,
-	// when do we populate the map? In other words, we need a map of block
-	// numbers to BasicBlockInContexts whose delegate's original block number
-	// matches the key for a given supergraph. Should it be a table? Or, maybe
-	// it's just a collection of maps, one for each supergraph? ICFGSupergraph
-	// -> Map. Then, Integer -> BasicBlockInContext. But, now must also consider
-	// the cgNode. Also note though that there is not a one-to-one mapping
-	// between blocks and blocks in context. #21.
 	/**
-	 * Return the basic block in context for the given block in the procedure
-	 * represented by the given call graph node in the given supergraph.
+	 * Index the blocks in context of the given supergraph by the call graph node
+	 * representing their procedure and their original block number #21.
 	 *
-	 * @param block      The block in which to find the corresponding block in
-	 *                   context in the supergraph.
-	 * @param cgNode     The call graph node representing the procedure that
-	 *                   contains the block.
-	 * @param supergraph The supergraph in which to look up the corresponding block
-	 *                   in context.
-	 * @return The block in context in the given supergraph that corresponds to the
-	 *         given block with the procedure represented by the given call graph
-	 *         node.
+	 * @param supergraph The supergraph whose blocks in context to index.
+	 * @return A table mapping a call graph node and an original block number to
+	 *         the corresponding block in context in the given supergraph.
+	 * @apiNote There is not a one-to-one mapping between blocks and blocks in
+	 *          context. As such, only the first (non-entry and non-exit) block in
+	 *          context encountered for a given original block is retained.
 	 */
-	private static Optional<BasicBlockInContext<IExplodedBasicBlock>> getBasicBlockInContextForBlock(
-			ISSABasicBlock block, CGNode cgNode, ICFGSupergraph supergraph) {
-		// can we search the supergraph for the corresponding block? Do I need
-		// to search the entire graph?
+	private static Table<CGNode, Integer, BasicBlockInContext<IExplodedBasicBlock>> indexBlocksInContext(
+			ICFGSupergraph supergraph) {
+		Table<CGNode, Integer, BasicBlockInContext<IExplodedBasicBlock>> ret = HashBasedTable.create();
+
 		for (BasicBlockInContext<IExplodedBasicBlock> basicBlockInContext : supergraph) {
-			CGNode blockInContextProcedure = supergraph.getProcOf(basicBlockInContext);
-			if (blockInContextProcedure == cgNode) {
-				IExplodedBasicBlock delegate = basicBlockInContext.getDelegate();
-				if (!delegate.isEntryBlock() && !delegate.isExitBlock()
-						&& delegate.getOriginalNumber() == block.getNumber() && delegate.getInstruction() != null)
-					return Optional.of(basicBlockInContext);
+			IExplodedBasicBlock delegate = basicBlockInContext.getDelegate();
+
+			if (!delegate.isEntryBlock() && !delegate.isExitBlock() && delegate.getInstruction() != null) {
+				CGNode blockInContextProcedure = supergraph.getProcOf(basicBlockInContext);
+				int originalNumber = delegate.getOriginalNumber();
+
+				if (!ret.contains(blockInContextProcedure, originalNumber))
+					ret.put(blockInContextProcedure, originalNumber, basicBlockInContext);
 			}
 		}
-		return Optional.empty();
+
+		LOGGER.fine(() -> "Indexed " + ret.size() + " blocks in context.");
+		return ret;
+	}
+
+	/**
+	 * Returns the possible targets of the call defining a behavioral parameter,
+	 * e.g., the implementations of a lambda expression.
+	 *
+	 * @param engine                 The engine whose call graph to use.
+	 * @param declaredTargetOfCaller The method passing the behavioral parameter.
+	 * @param def                    The definition of the behavioral parameter.
+	 * @return The possible target nodes.
+	 */
+	private static Set<CGNode> getPossibleBehavioralParameterTargets(EclipseProjectAnalysisEngine<InstanceKey> engine,
+			MethodReference declaredTargetOfCaller, SSAInstruction def) {
+		Set<CGNode> ret = new HashSet<>();
+
+		// it should be a call.
+		if (def instanceof SSAAbstractInvokeInstruction) {
+			CallSiteReference callSiteReference = ((SSAAbstractInvokeInstruction) def).getCallSite();
+
+			// take a look at the nodes in the caller.
+			Set<CGNode> nodes = engine.getCallGraph().getNodes(declaredTargetOfCaller);
+
+			// for each caller node.
+			for (CGNode cgNode : nodes) {
+				// look up the possible target nodes of the call site in the
+				// behavioral parameter definition from the caller. There are none
+				// if the caller doesn't have the call site.
+				Set<CGNode> possibleTargets = engine.getCallGraph().getPossibleTargets(cgNode, callSiteReference);
+				LOGGER.fine(() -> "#possible targets: " + possibleTargets.size());
+
+				if (!possibleTargets.isEmpty())
+					LOGGER.fine(() -> possibleTargets.stream().map(String::valueOf)
+							.collect(Collectors.joining("\n", "Possible target: ", "")));
+
+				ret.addAll(possibleTargets);
+			}
+		} else if (def != null)
+			LOGGER.warning("Def was an instance of a: " + def.getClass());
+
+		return ret;
+	}
+
+	/**
+	 * Collects the blocks of each terminal operation call in the client code of
+	 * the given call graph.
+	 *
+	 * @param callGraph The call graph whose client nodes to search.
+	 * @return The call graph nodes paired with the blocks containing their calls
+	 *         to terminal operations.
+	 */
+	private static Collection<Pair<CGNode, ISSABasicBlock>> getTerminalOperationCallBlocks(CallGraph callGraph) {
+		Collection<Pair<CGNode, ISSABasicBlock>> ret = new ArrayList<>();
+
+		// for each call graph node in the call graph.
+		for (CGNode cgNode : callGraph)
+			// separating client from library code, improving performance #103.
+			if (cgNode.getMethod().getDeclaringClass().getClassLoader().getReference()
+					.equals(ClassLoaderReference.Application)) {
+
+				// we can verify that only client nodes are being considered
+				LOGGER.fine(() -> "Examining client call graph node: " + cgNode);
+
+				// for each call site in the call graph node.
+				for (Iterator<CallSiteReference> callSites = cgNode.iterateCallSites(); callSites.hasNext();) {
+					// get the call site reference.
+					CallSiteReference callSiteReference = callSites.next();
+
+					// get the (declared) called method at the call site.
+					MethodReference calledMethod = callSiteReference.getDeclaredTarget();
+
+					// is it a terminal operation?
+					if (isTerminalOperation(calledMethod)) {
+						// get the basic block for the call.
+						IR ir = cgNode.getIR();
+
+						ISSABasicBlock[] blocksForCall = ir.getBasicBlocksForCall(callSiteReference);
+
+						assert blocksForCall.length == 1 : "Expecting only a single basic block for the call: "
+								+ callSiteReference;
+
+						for (ISSABasicBlock block : blocksForCall)
+							ret.add(Pair.make(cgNode, block));
+					}
+				}
+			}
+
+		LOGGER.info("The number of terminal operation calls: " + ret.size());
+		return ret;
 	}
 
 	private static boolean isStatefulIntermediateOperation(MethodReference method) {
@@ -373,14 +607,16 @@ public class StreamStateMachine {
 	private static boolean isStreamCreatedFromIntermediateOperation(InstanceKey instance, IClassHierarchy hierarchy,
 			CallGraph callGraph) throws IOException, CoreException {
 		// Get the immediate possible receivers of the stream instance.
-		Set<InstanceKey> receivers = Util.getCallString(instance).getPossibleReceivers();
+		CallStringWithReceivers callString = Util.getCallString(instance);
+		Set<InstanceKey> receivers = callString.getPossibleReceivers();
 
 		// Get any additional receivers we need to consider.
 		Collection<? extends InstanceKey> additionalReceivers = getAdditionalNecessaryReceiversFromPredecessors(
 				instance, hierarchy, callGraph);
 
-		// Add them to the receivers set.
+		// Add them to the receivers set as well as to the call string's.
 		receivers.addAll(additionalReceivers);
+		callString.addPossibleReceivers(additionalReceivers);
 
 		if (receivers.isEmpty())
 			return false;
@@ -413,34 +649,12 @@ public class StreamStateMachine {
 		return types.stream().map(TypeAbstraction::getTypeReference).allMatch(tr -> tr.equals(TypeReference.Void));
 	}
 
-	private static Collection<? extends IDFAState> mergeTypeStates(Set<IDFAState> set1, Set<IDFAState> set2) {
-		if (set1.isEmpty())
-			return set2;
-		else if (set2.isEmpty())
-			return set1;
-
-		Set<IDFAState> ret = new HashSet<>();
-
-		for (IDFAState state1 : set1)
-			for (IDFAState state2 : set2)
-				ret.add(selectState(state1, state2));
-
-		return ret;
-	}
-
 	private static void outputTypeStateStatistics(AggregateSolverResult result) {
 		LOGGER.info("Total instances: " + result.totalInstancesNum());
 		LOGGER.info("Processed instances: " + result.processedInstancesNum());
 		LOGGER.info("Skipped instances: " + result.skippedInstances());
 	}
 
-	private static IDFAState selectState(IDFAState state1, IDFAState state2) {
-		if (state1.getName().equals(BOTTOM_STATE_NAME))
-			return state2;
-		else
-			return state1;
-	}
-
 	private static boolean signatureMatches(String[] operations, MethodReference method) {
 		String signature = method.getSignature();
 		return Arrays.stream(operations).map(o -> o + "(").anyMatch(signature::startsWith);
@@ -450,14 +664,19 @@ public class StreamStateMachine {
 	 * A table mapping an instance and a block to the instance's possible states at
 	 * that block.
 	 */
-	private Table<InstanceKey, BasicBlockInContext<IExplodedBasicBlock>, Map<TypestateRule, Set<IDFAState>>> instanceBlockStateTable = HashBasedTable
-			.create();
+	private InstanceBlockStateTable instanceBlockStateTable = new InstanceBlockStateTable();
 
 	/**
 	 * A set of instances whose reduce ordering may matter.
 	 */
 	private Set<InstanceKey> instancesWhoseReduceOrderingPossiblyMatters = new HashSet<>();
 
+	/**
+	 * Instances skipped by any rule because solving for them exceeded a time
+	 * budget.
+	 */
+	private Set<InstanceKey> instancesOverBudget = new HashSet<>();
+
 	private Set<InstanceKey> instancesWithoutTerminalOperations = new HashSet<>();
 
 	/**
@@ -467,9 +686,10 @@ public class StreamStateMachine {
 	private Set<InstanceKey> instancesWithSideEffects = new HashSet<>();
 
 	/**
-	 * All of the stream's predecessors.
+	 * The transitive closure of {@link #instanceToPredecessorsMap}. Computed
+	 * lazily and discarded when the map is filled.
 	 */
-	private Map<InstanceKey, Set<InstanceKey>> instanceToAllPredecessorsMap = new HashMap<>();
+	private InstancePredecessorClosure instancePredecessorClosure;
 
 	/**
 	 * A stream's immediate predecessor.
@@ -487,49 +707,153 @@ public class StreamStateMachine {
 
 	private Map<BasicBlockInContext<IExplodedBasicBlock>, OrdinalSet<InstanceKey>> terminalBlockToPossibleReceivers = new HashMap<>();
 
+	/**
+	 * A map from a supergraph to a table indexing its blocks in context by call
+	 * graph node and original block number. Populated lazily, and a supergraph is
+	 * removed once the facts are extracted from its solver result.
+	 */
+	private Map<ICFGSupergraph, Table<CGNode, Integer, BasicBlockInContext<IExplodedBasicBlock>>> supergraphToBlockInContextTable = new HashMap<>();
+
 	private Set<InstanceKey> trackedInstances = new HashSet<>();
 
-	private Set<IDFAState> computeMergedTypeState(InstanceKey instanceKey,
-			BasicBlockInContext<IExplodedBasicBlock> block, StreamAttributeTypestateRule rule) {
+	/**
+	 * The time, in milliseconds, that solving a rule for a single instance may
+	 * take. Zero for no budget.
+	 */
+	private long typestateInstanceTimeBudget;
+
+	/**
+	 * The time, in milliseconds, that solving a rule for all instances may take.
+	 * Zero for no budget.
+	 */
+	private long typestateRuleTimeBudget;
+
+	/**
+	 * True iff the typestate rules should only be solved for the instances of the
+	 * streams surviving the checks not requiring typestate analysis rather than
+	 * for all stream instances.
+	 */
+	private boolean useDemandDrivenTypestate;
+
+	/**
+	 * True iff a single typestate rule whose automaton is the product of those of
+	 * the individual stream attributes should be solved rather than one rule per
+	 * attribute.
+	 */
+	private boolean useProductTypestateRule;
+
+	/**
+	 * Computes the instances whose typestates are demanded, i.e., those
+	 * originating from the given streams that survive checks not requiring
+	 * typestate analysis, along with their predecessors, whose states are merged
+	 * with theirs. Streams with inconsistent initial attributes have already been
+	 * excluded; streams without terminal operations are excluded here. Also
+	 * fills the tracked instances, their predecessors, and the mapping between
+	 * the instances and the given streams.
+	 *
+	 * @param streamSet                   The streams to analyze.
+	 * @param engine                      The engine whose pointer analysis and heap
+	 *                                    graph to use.
+	 * @param dfa                         The DFA of any of the rules, all of which
+	 *                                    track the same types.
+	 * @param terminalOperationCallBlocks The blocks calling terminal operations
+	 *                                    along with their nodes.
+	 * @return The instances whose typestates are demanded.
+	 */
+	private Set<InstanceKey> computeDemandedInstances(Set<Stream> streamSet,
+			EclipseProjectAnalysisEngine<InstanceKey> engine, TypeStateProperty dfa,
+			Collection<Pair<CGNode, ISSABasicBlock>> terminalOperationCallBlocks, IProgressMonitor monitor)
+			throws InvalidClassFileException, IOException, CoreException {
+		SubMonitor subMonitor = SubMonitor.convert(monitor, "Computing demanded instances...", 2);
+		IClassHierarchy classHierarchy = engine.getClassHierarchy();
+
+		// track the instances whose type is tracked by the DFA as the solver would.
+		for (InstanceKey instanceKey : engine.getPointerAnalysis().getInstanceKeys()) {
+			if (!TypeStatePropertyContext.isTrackedType(classHierarchy, dfa.getTypes(), instanceKey.getConcreteType()))
+				continue;
+
+			if (instanceKey instanceof AllocationSite) {
+				IMethod method = ((AllocationSite) instanceKey).getMethod();
+
+				// skip those allocated by synthetic methods other than factories.
+				if (method.isSynthetic() && !((SyntheticMethod) method).isFactoryMethod())
+					continue;
+			}
+
+			this.trackedInstances.add(instanceKey);
+		}
+
+		this.fillInstanceToPredecessorMap(engine);
+		this.fillInstanceToStreamMap(streamSet, engine, subMonitor.split(1, SubMonitor.SUPPRESS_NONE));
+
+		// the possible receivers of the terminal operation calls along with their
+		// predecessors.
+		Set<InstanceKey> terminatedInstances = new HashSet<>();
+
+		for (Pair<CGNode, ISSABasicBlock> terminalOperationCallBlock : terminalOperationCallBlocks)
+			for (SSAInstruction instruction : terminalOperationCallBlock.snd)
+				if (instruction instanceof SSAAbstractInvokeInstruction) {
+					PointerKey pointerKey = engine.getHeapGraph().getHeapModel()
+							.getPointerKeyForLocal(terminalOperationCallBlock.fst, instruction.getUse(0));
+					engine.getPointerAnalysis().getPointsToSet(pointerKey).forEach(terminatedInstances::add);
+				}
+
+		this.propagateStreamInstanceProperty(terminatedInstances);
+
+		// the streams surviving the checks.
+		Set<InstanceKey> demandingStreams = this.instanceToStreamMap.keySet().stream()
+				.filter(terminatedInstances::contains).collect(Collectors.toSet());
+
+		Set<InstanceKey> ret = new HashSet<>();
+
+		for (InstanceKey instanceKey : this.trackedInstances)
+			if (this.computePossibleOriginStreams(instanceKey).stream().anyMatch(demandingStreams::contains)) {
+				ret.add(instanceKey);
+				ret.addAll(this.getAllPredecessors(instanceKey));
+			}
+
+		subMonitor.worked(1);
+
+		LOGGER.info("Demanding the typestates of: " + ret.size() + " of " + this.trackedInstances.size()
+				+ " instances for: " + demandingStreams.size() + " of " + streamSet.size() + " streams.");
+		return ret;
+	}
+
+	/**
+	 * Computes the possible states of the given instance at the given block for
+	 * the given rule, merged with those of its predecessors.
+	 *
+	 * @return A bitmask of the possible states.
+	 * @see InstanceBlockStateTable#decode(long)
+	 */
+	private long computeMergedTypeState(InstanceKey instanceKey, BasicBlockInContext<IExplodedBasicBlock> block,
+			StreamAttributeTypestateRule rule) {
 		Set<InstanceKey> predecessors = this.instanceToPredecessorsMap.get(instanceKey);
-		Map<TypestateRule, Set<IDFAState>> ruleToStates = this.instanceBlockStateTable.get(instanceKey, block);
 
-		if (ruleToStates == null)
-			return Collections.emptySet();
+		if (!this.instanceBlockStateTable.contains(instanceKey, block))
+			return 0;
 
-		Set<IDFAState> possibleInstanceStates = ruleToStates.get(rule);
+		long possibleInstanceStates = this.instanceBlockStateTable.get(instanceKey, block, rule);
 
 		if (predecessors.isEmpty())
 			return possibleInstanceStates;
 
-		Set<IDFAState> ret = new HashSet<>();
+		long ret = 0;
 		for (InstanceKey pred : predecessors)
-			ret.addAll(mergeTypeStates(possibleInstanceStates, this.computeMergedTypeState(pred, block, rule)));
+			ret |= this.mergeTypeStates(possibleInstanceStates, this.computeMergedTypeState(pred, block, rule), rule);
 
 		return ret;
 	}
 
-	// TODO: This should probably be cached.
 	private Set<InstanceKey> computePossibleOriginStreams(InstanceKey instanceKey) {
 		// if there is no instance.
 		if (instanceKey == null)
 			// there are no origins.
 			return Collections.emptySet();
 
-		// otherwise, retrieve the predecessors of the instance.
-		Set<InstanceKey> predecessors = this.instanceToPredecessorsMap.get(instanceKey);
-
-		// if there are no predecessors for this instance.
-		if (predecessors.isEmpty())
-			// then this instance must be its own origin.
-			return Collections.singleton(instanceKey);
-
-		// otherwise, we have a situation where the instance in question has one
-		// or more predecessors.
-		// In this case, the possible origins of the given instance are the
-		// possible origins of each of its predecessors.
-		return predecessors.stream().map(this::computePossibleOriginStreams).flatMap(os -> os.stream())
-				.collect(Collectors.toSet());
+		// otherwise, the possible origins of the given instance are its predecessors
+		// without predecessors or the instance itself if it has none.
+		return this.getInstancePredecessorClosure().getOrigins(instanceKey);
 	}
 
 	private boolean deriveRomForNonScalarMethod(Collection<TypeAbstraction> possibleReturnTypes,
@@ -654,90 +978,39 @@ public class StreamStateMachine {
 		}
 	}
 
-	private void discoverLambdaSideEffects(EclipseProjectAnalysisEngine<InstanceKey> engine,
-			Map<CGNode, OrdinalSet<PointerKey>> mod, Iterable<InstanceKey> instances,
-			MethodReference declaredTargetOfCaller, IR ir, int use) {
-		// look up it's definition.
-		DefUse defUse = engine.getCache().getDefUse(ir);
-		// it should be a call.
-		SSAInstruction def = defUse.getDef(use);
-
-		// if we found it.
-		if (def != null)
-			if (def instanceof SSAAbstractInvokeInstruction) {
-				SSAAbstractInvokeInstruction instruction = (SSAAbstractInvokeInstruction) def;
-
-				// take a look at the nodes in the caller.
-				Set<CGNode> nodes = engine.getCallGraph().getNodes(declaredTargetOfCaller);
-
-				// for each caller node.
-				for (CGNode cgNode : nodes)
-					// for each call site.
-					for (Iterator<CallSiteReference> callSiteIt = cgNode.iterateCallSites(); callSiteIt.hasNext();) {
-						CallSiteReference callSiteReference = callSiteIt.next();
-
-						// if the call site is the as the one in the
-						// behavioral parameter definition.
-						if (callSiteReference.equals(instruction.getCallSite())) {
-							// look up the possible target nodes of the call
-							// site from the caller.
-							Set<CGNode> possibleTargets = engine.getCallGraph().getPossibleTargets(cgNode,
-									callSiteReference);
-							LOGGER.fine(() -> "#possible targets: " + possibleTargets.size());
-
-							if (!possibleTargets.isEmpty())
-								LOGGER.fine(() -> possibleTargets.stream().map(String::valueOf)
-										.collect(Collectors.joining("\n", "Possible target: ", "")));
-
-							// for each possible target node.
-							for (CGNode target : possibleTargets) {
-								// get the set of pointers (locations) it
-								// may modify
-								OrdinalSet<PointerKey> modSet = mod.get(target);
-								LOGGER.fine(() -> "#original modified locations: " + modSet.size());
-
-								Collection<PointerKey> filteredModSet = new HashSet<>();
-
-								for (PointerKey pointerKey : modSet)
-									if (!filterPointerKey(pointerKey, engine))
-										filteredModSet.add(pointerKey);
-
-								LOGGER.fine(() -> "#filtered modified locations: " + filteredModSet.size());
-
-								// if it's non-empty.
-								if (!filteredModSet.isEmpty()) {
-									filteredModSet
-											.forEach(pk -> LOGGER.fine(() -> "Filtered modified location: " + pk));
-
-									// mark the instances whose pipeline may
-									// have side-effects.
-									instances.forEach(this.instancesWithSideEffects::add);
-								}
-							}
-							// we found a match between the graph call site
-							// and the one in the definition. No need to
-							// continue.
-							break;
-						}
-					}
-			} else
-				LOGGER.warning("Def was an instance of a: " + def.getClass());
+	/**
+	 * Returns true iff the given possible target of a behavioral parameter may
+	 * modify a location that isn't filtered.
+	 *
+	 * @param modSet               The locations the given target may modify.
+	 * @param pointerKeyToFiltered A map from the locations already checked to
+	 *                             whether they are filtered.
+	 */
+	private static boolean hasPossibleSideEffects(EclipseProjectAnalysisEngine<InstanceKey> engine, CGNode target,
+			OrdinalSet<PointerKey> modSet, Map<PointerKey, Boolean> pointerKeyToFiltered) {
+		LOGGER.fine(() -> "#original modified locations of " + target + ": " + modSet.size());
+
+		Collection<PointerKey> filteredModSet = new HashSet<>();
+
+		for (PointerKey pointerKey : modSet)
+			if (!pointerKeyToFiltered.computeIfAbsent(pointerKey, pk -> filterPointerKey(pk, engine)))
+				filteredModSet.add(pointerKey);
+
+		LOGGER.fine(() -> "#filtered modified locations: " + filteredModSet.size());
+		filteredModSet.forEach(pk -> LOGGER.fine(() -> "Filtered modified location: " + pk));
+
+		return !filteredModSet.isEmpty();
 	}
 
 	private void discoverPossibleSideEffects(EclipseProjectAnalysisEngine<InstanceKey> engine, IProgressMonitor monitor)
 			throws IOException, CoreException {
 		SubMonitor subMonitor = SubMonitor.convert(monitor, "Discovering side-effects...", 100);
 
-		// create the ModRef analysis.
-		ModRef<InstanceKey> modRef = ModRef.make();
-
-		// compute modifications over the call graph.
-		// TODO: Should this be cached? Didn't have luck caching the call graph.
-		// Perhaps this will be similar.
-		Map<CGNode, OrdinalSet<PointerKey>> mod = modRef.computeMod(engine.getCallGraph(), engine.getPointerAnalysis());
+		// the behavioral parameters passed to the pipelines.
+		List<BehavioralParameter> behavioralParameters = new ArrayList<>();
 
 		// for each terminal operation call, I think?
-		SubMonitor loopMonitor = subMonitor.split(50, SubMonitor.SUPPRESS_NONE)
+		SubMonitor loopMonitor = subMonitor.split(30, SubMonitor.SUPPRESS_NONE)
 				.setWorkRemaining(this.terminalBlockToPossibleReceivers.keySet().size());
 
 		for (BasicBlockInContext<IExplodedBasicBlock> block : this.terminalBlockToPossibleReceivers.keySet()) {
@@ -761,8 +1034,11 @@ public class StreamStateMachine {
 					// get a reference to the calling method.
 					MethodReference declaredTarget = block.getMethod().getReference();
 
-					this.discoverLambdaSideEffects(engine, mod, this.terminalBlockToPossibleReceivers.get(block),
-							declaredTarget, ir, paramUse);
+					// look up it's definition.
+					SSAInstruction def = engine.getCache().getDefUse(ir).getDef(paramUse);
+
+					behavioralParameters.add(new BehavioralParameter(this.terminalBlockToPossibleReceivers.get(block),
+							declaredTarget, def));
 				}
 				++processedInstructions;
 			}
@@ -773,7 +1049,7 @@ public class StreamStateMachine {
 
 		// for each instance in the analysis result (these should be the
 		// "intermediate" streams).
-		loopMonitor = subMonitor.split(50, SubMonitor.SUPPRESS_NONE).setWorkRemaining(this.trackedInstances.size());
+		loopMonitor = subMonitor.split(30, SubMonitor.SUPPRESS_NONE).setWorkRemaining(this.trackedInstances.size());
 
 		for (InstanceKey instance : this.trackedInstances) {
 			// make sure that the stream is the result of an intermediate
@@ -800,12 +1076,45 @@ public class StreamStateMachine {
 			if (calls[0].getNumberOfUses() == 2) {
 				// get the use of the first parameter.
 				int use = calls[0].getUse(1);
-				this.discoverLambdaSideEffects(engine, mod, Collections.singleton(instance),
-						callString.getMethods()[0].getReference(), ir, use);
+
+				// look up it's definition.
+				SSAInstruction def = engine.getCache().getDefUse(ir).getDef(use);
+
+				behavioralParameters.add(new BehavioralParameter(Collections.singleton(instance),
+						callString.getMethods()[0].getReference(), def));
 			}
 
 			loopMonitor.worked(1);
 		}
+
+		// look up the possible targets of the behavioral parameters.
+		for (BehavioralParameter parameter : behavioralParameters)
+			parameter.setPossibleTargets(getPossibleBehavioralParameterTargets(engine,
+					parameter.getDeclaredTargetOfCaller(), parameter.getDefinition()));
+		subMonitor.worked(10);
+
+		// compute modifications only for the possible targets of the behavioral
+		// parameters, reusing those already computed by the engine.
+		Set<CGNode> possibleTargets = behavioralParameters.stream().flatMap(p -> p.getPossibleTargets().stream())
+				.collect(Collectors.toSet());
+		Map<CGNode, OrdinalSet<PointerKey>> mod = engine.getMod(possibleTargets);
+		subMonitor.worked(20);
+
+		// check each possible target once, even if it's shared by several
+		// behavioral parameters, and each location once, even if it's modified by
+		// several targets.
+		Map<PointerKey, Boolean> pointerKeyToFiltered = new HashMap<>();
+		Set<CGNode> targetsWithSideEffects = new HashSet<>();
+
+		for (CGNode target : possibleTargets)
+			if (hasPossibleSideEffects(engine, target, mod.get(target), pointerKeyToFiltered))
+				targetsWithSideEffects.add(target);
+
+		// mark the instances whose pipeline may have side-effects.
+		for (BehavioralParameter parameter : behavioralParameters)
+			if (parameter.getPossibleTargets().stream().anyMatch(targetsWithSideEffects::contains))
+				parameter.getInstances().forEach(this.instancesWithSideEffects::add);
+		subMonitor.worked(10);
 	}
 
 	private void discoverPossibleStatefulIntermediateOperations(IClassHierarchy hierarchy, CallGraph callGraph,
@@ -865,6 +1174,68 @@ public class StreamStateMachine {
 		this.instancesWithoutTerminalOperations.addAll(badStreamInstances);
 	}
 
+	/**
+	 * Extracts the states of the given instance at each terminal operation call
+	 * block from its typestate result.
+	 *
+	 * @param instanceKey                 The instance whose states to extract.
+	 * @param instanceResult              The typestate result of the given
+	 *                                    instance.
+	 * @param rule                        The rule that was solved.
+	 * @param terminalOperationCallBlocks The blocks calling terminal operations
+	 *                                    along with their nodes.
+	 * @param monitor                     To check for cancellation.
+	 * @return The blocks in context paired with the states of the given instance
+	 *         there. A block in context paired with null has a (possibly empty)
+	 *         state set.
+	 */
+	private List<Pair<BasicBlockInContext<IExplodedBasicBlock>, IDFAState>> extractStates(InstanceKey instanceKey,
+			TypeStateResult instanceResult, StreamAttributeTypestateRule rule,
+			Collection<Pair<CGNode, ISSABasicBlock>> terminalOperationCallBlocks, IProgressMonitor monitor) {
+		if (monitor.isCanceled())
+			throw new OperationCanceledException();
+
+		List<Pair<BasicBlockInContext<IExplodedBasicBlock>, IDFAState>> ret = new ArrayList<>();
+
+		// get the supergraph for the instance result.
+		ICFGSupergraph supergraph = instanceResult.getSupergraph();
+
+		// for each terminal operation call block.
+		for (Pair<CGNode, ISSABasicBlock> terminalOperationCallBlock : terminalOperationCallBlocks) {
+			CGNode cgNode = terminalOperationCallBlock.fst;
+			ISSABasicBlock block = terminalOperationCallBlock.snd;
+
+			BasicBlockInContext<IExplodedBasicBlock> blockInContext = this
+					.getBasicBlockInContextForBlock(block, cgNode, supergraph)
+					.orElseThrow(() -> new IllegalStateException("No basic block in context for block: " + block));
+
+			IntSet resultingFacts = instanceResult.getResult().getResult(blockInContext);
+
+			// the instance has a (possibly empty) state set at this block.
+			if (!resultingFacts.isEmpty())
+				ret.add(Pair.make(blockInContext, (IDFAState) null));
+
+			for (IntIterator factIterator = resultingFacts.intIterator(); factIterator.hasNext();) {
+				int fact = factIterator.next();
+
+				// get the facts.
+				Factoid factoid = instanceResult.getDomain().getMappedObject(fact);
+				if (factoid != DUMMY_ZERO) {
+					BaseFactoid baseFactoid = (BaseFactoid) factoid;
+					assert baseFactoid.instance.equals(
+							instanceKey) : "Sanity check that the fact instance should be the same as the instance being examined.";
+
+					// add the encountered state.
+					LOGGER.fine(() -> "Adding state: " + baseFactoid.state + " for instance: " + baseFactoid.instance
+							+ " for block: " + block + " for rule: " + rule.getName());
+					ret.add(Pair.make(blockInContext, baseFactoid.state));
+				}
+			}
+		}
+
+		return ret;
+	}
+
 	private void fillInstanceToPredecessorMap(EclipseProjectAnalysisEngine<InstanceKey> engine)
 			throws IOException, CoreException {
 		for (InstanceKey instance : this.trackedInstances) {
@@ -882,6 +1253,9 @@ public class StreamStateMachine {
 				return x;
 			});
 		}
+
+		// the closure is stale.
+		this.instancePredecessorClosure = null;
 	}
 
 	private void fillInstanceToStreamMap(Set<Stream> streamSet, EclipseProjectAnalysisEngine<InstanceKey> engine,
@@ -937,20 +1311,38 @@ public class StreamStateMachine {
 	}
 
 	private Set<InstanceKey> getAllPredecessors(InstanceKey instanceKey) {
-		if (!this.instanceToAllPredecessorsMap.containsKey(instanceKey)) {
-			Set<InstanceKey> ret = new HashSet<>();
+		return this.getInstancePredecessorClosure().getAllPredecessors(instanceKey);
+	}
 
-			// add the instance's predecessors.
-			ret.addAll(this.instanceToPredecessorsMap.get(instanceKey));
+	private InstancePredecessorClosure getInstancePredecessorClosure() {
+		if (this.instancePredecessorClosure == null)
+			this.instancePredecessorClosure = new InstancePredecessorClosure(this.instanceToPredecessorsMap);
 
-			// add their predecessors.
-			ret.addAll(this.instanceToPredecessorsMap.get(instanceKey).stream()
-					.flatMap(ik -> this.getAllPredecessors(ik).stream()).collect(Collectors.toSet()));
+		return this.instancePredecessorClosure;
+	}
 
-			this.instanceToAllPredecessorsMap.put(instanceKey, ret);
-			return ret;
-		} else
-			return this.instanceToAllPredecessorsMap.get(instanceKey);
+	/**
+	 * Return the basic block in context for the given block in the procedure
+	 * represented by the given call graph node in the given supergraph.
+	 *
+	 * @param block      The block in which to find the corresponding block in
+	 *                   context in the supergraph.
+	 * @param cgNode     The call graph node representing the procedure that
+	 *                   contains the block.
+	 * @param supergraph The supergraph in which to look up the corresponding block
+	 *                   in context.
+	 * @return The block in context in the given supergraph that corresponds to the
+	 *         given block with the procedure represented by the given call graph
+	 *         node.
+	 * @apiNote The supergraph is indexed upon the first lookup. Subsequent lookups
+	 *          in the same supergraph are constant time.
+	 */
+	private Optional<BasicBlockInContext<IExplodedBasicBlock>> getBasicBlockInContextForBlock(ISSABasicBlock block,
+			CGNode cgNode, ICFGSupergraph supergraph) {
+		Table<CGNode, Integer, BasicBlockInContext<IExplodedBasicBlock>> blockInContextTable = this.supergraphToBlockInContextTable
+				.computeIfAbsent(supergraph, StreamStateMachine::indexBlocksInContext);
+
+		return Optional.ofNullable(blockInContextTable.get(cgNode, block.getNumber()));
 	}
 
 	public Collection<IDFAState> getStates(StreamAttributeTypestateRule rule, InstanceKey instanceKey) {
@@ -969,9 +1361,361 @@ public class StreamStateMachine {
 		return Collections.unmodifiableCollection(this.trackedInstances);
 	}
 
+	private long mergeTypeStates(long states1, long states2, StreamAttributeTypestateRule rule) {
+		if (states1 == 0)
+			return states2;
+		else if (states2 == 0)
+			return states1;
+
+		long ret = 0;
+
+		for (long remaining1 = states1; remaining1 != 0; remaining1 &= remaining1 - 1) {
+			IDFAState state1 = this.instanceBlockStateTable.decodeState(Long.numberOfTrailingZeros(remaining1));
+
+			for (long remaining2 = states2; remaining2 != 0; remaining2 &= remaining2 - 1) {
+				IDFAState state2 = this.instanceBlockStateTable.decodeState(Long.numberOfTrailingZeros(remaining2));
+				ret |= this.instanceBlockStateTable.encode(rule, rule.selectState(state1, state2));
+			}
+		}
+
+		return ret;
+	}
+
 	private void propagateStreamInstanceProperty(Collection<InstanceKey> streamInstancesWithProperty) {
-		streamInstancesWithProperty.addAll(streamInstancesWithProperty.stream()
-				.flatMap(ik -> this.getAllPredecessors(ik).stream()).collect(Collectors.toSet()));
+		streamInstancesWithProperty
+				.addAll(this.getInstancePredecessorClosure().getAllPredecessors(streamInstancesWithProperty));
+	}
+
+	public long getTypestateInstanceTimeBudget() {
+		return this.typestateInstanceTimeBudget;
+	}
+
+	public long getTypestateRuleTimeBudget() {
+		return this.typestateRuleTimeBudget;
+	}
+
+	/**
+	 * Set the time that solving a rule for a single instance may take. The
+	 * streams of instances exceeding it fail with
+	 * {@link PreconditionFailure#TYPESTATE_BUDGET_EXCEEDED}.
+	 *
+	 * @param typestateInstanceTimeBudget The time budget in milliseconds or zero
+	 *                                    for none.
+	 */
+	public void setTypestateInstanceTimeBudget(long typestateInstanceTimeBudget) {
+		this.typestateInstanceTimeBudget = typestateInstanceTimeBudget;
+	}
+
+	/**
+	 * Set the time that solving a rule for all instances may take. Once exceeded,
+	 * the remaining instances are skipped, and their streams fail with
+	 * {@link PreconditionFailure#TYPESTATE_BUDGET_EXCEEDED}.
+	 *
+	 * @param typestateRuleTimeBudget The time budget in milliseconds or zero for
+	 *                                none.
+	 */
+	public void setTypestateRuleTimeBudget(long typestateRuleTimeBudget) {
+		this.typestateRuleTimeBudget = typestateRuleTimeBudget;
+	}
+
+	public void setUseDemandDrivenTypestate(boolean useDemandDrivenTypestate) {
+		this.useDemandDrivenTypestate = useDemandDrivenTypestate;
+	}
+
+	public boolean shouldUseDemandDrivenTypestate() {
+		return this.useDemandDrivenTypestate;
+	}
+
+	public void setUseProductTypestateRule(boolean useProductTypestateRule) {
+		this.useProductTypestateRule = useProductTypestateRule;
+	}
+
+	public boolean shouldUseProductTypestateRule() {
+		return this.useProductTypestateRule;
+	}
+
+	/**
+	 * Solves the given rule and merges its results into the typestates of the
+	 * instances. Only the facts extracted from the solver's result are retained
+	 * until they're merged, not the result itself.
+	 *
+	 * @param rule                        The rule to solve.
+	 * @param dfa                         The DFA of the given rule.
+	 * @param engine                      The engine whose pointer analysis and heap
+	 *                                    graph to use.
+	 * @param prunedCallGraph             The call graph to solve the rule over.
+	 * @param typeStateOptions            The options of the solver.
+	 * @param terminalOperationCallBlocks The blocks calling terminal operations
+	 *                                    along with their nodes.
+	 * @param demandedInstances           The instances to track or null to track
+	 *                                    all stream instances.
+	 * @return The {@link Statistics} of solving the given rule.
+	 */
+	private Statistics solve(StreamAttributeTypestateRule rule, TypeStateProperty dfa,
+			EclipseProjectAnalysisEngine<InstanceKey> engine, CallGraph prunedCallGraph,
+			TypeStateOptions typeStateOptions, Collection<Pair<CGNode, ISSABasicBlock>> terminalOperationCallBlocks,
+			Collection<InstanceKey> demandedInstances, IProgressMonitor monitor)
+			throws PropertiesException, CancelException, IOException, CoreException {
+		SubMonitor subMonitor = SubMonitor.convert(monitor, 70);
+
+		ExtractedFacts facts = this.solveAndExtract(rule, dfa, engine, prunedCallGraph, typeStateOptions,
+				terminalOperationCallBlocks, demandedInstances, subMonitor.split(60, SubMonitor.SUPPRESS_NONE));
+
+		List<InstanceKey> instances = facts.getInstances();
+		List<List<Pair<BasicBlockInContext<IExplodedBasicBlock>, IDFAState>>> instanceStates = facts
+				.getInstanceStates();
+
+		Statistics ret = facts.getStatistics();
+
+		// track the instances over budget, without states, so that their streams
+		// are found.
+		this.instancesOverBudget.addAll(facts.getInstancesOverBudget());
+		this.trackedInstances.addAll(facts.getInstancesOverBudget());
+
+		// for each terminal operation call block.
+		for (Entry<BasicBlockInContext<IExplodedBasicBlock>, Pair<CGNode, ISSABasicBlock>> entry : facts
+				.getTerminalBlocksInContext().entrySet()) {
+			BasicBlockInContext<IExplodedBasicBlock> blockInContext = entry.getKey();
+			CGNode cgNode = entry.getValue().fst;
+			ISSABasicBlock block = entry.getValue().snd;
+
+			if (!this.terminalBlockToPossibleReceivers.containsKey(blockInContext)) {
+				// associate possible receivers with the
+				// blockInContext.
+				// search through each instruction in the
+				// block.
+				int processedInstructions = 0;
+
+				for (SSAInstruction instruction : block) {
+					// if it's not an invoke instruction.
+					if (!(instruction instanceof SSAAbstractInvokeInstruction))
+						// skip it. Phi instructions will be handled by the pointer analysis
+						// below.
+						continue;
+
+					// Get the possible receivers. This
+					// number corresponds to the value
+					// number of the receiver of the method.
+					int valueNumberForReceiver = instruction.getUse(0);
+
+					// it should be represented by a pointer
+					// key.
+					PointerKey pointerKey = engine.getHeapGraph().getHeapModel()
+							.getPointerKeyForLocal(cgNode, valueNumberForReceiver);
+
+					// get the points to set for the
+					// receiver. This will give us all
+					// object instances that the receiver
+					// reference points to.
+					OrdinalSet<InstanceKey> pointsToSet = engine.getPointerAnalysis()
+							.getPointsToSet(pointerKey);
+					assert pointsToSet != null : "The points-to set (I think) should not be null for pointer: "
+							+ pointerKey;
+
+					OrdinalSet<InstanceKey> previousReceivers = this.terminalBlockToPossibleReceivers
+							.put(blockInContext, pointsToSet);
+					assert previousReceivers == null : "Reassociating a blockInContext: "
+							+ blockInContext + " with a new points-to set: " + pointsToSet
+							+ " that was originally: " + previousReceivers;
+
+					++processedInstructions;
+				}
+
+				assert processedInstructions == 1 : "Expecting to process one and only one instruction here.";
+			}
+		}
+
+		// for each instance in the typestate analysis result.
+		SubMonitor instanceMonitor = subMonitor.split(10, SubMonitor.SUPPRESS_NONE)
+				.setWorkRemaining(instances.size());
+
+		for (int i = 0; i < instances.size(); i++) {
+			// get the instance's key.
+			InstanceKey instanceKey = instances.get(i);
+
+			// add to tracked instances.
+			this.trackedInstances.add(instanceKey);
+
+			// merge its states into the table.
+			for (Pair<BasicBlockInContext<IExplodedBasicBlock>, IDFAState> blockState : instanceStates.get(i))
+				if (blockState.snd == null)
+					this.instanceBlockStateTable.add(instanceKey, blockState.fst);
+				else
+					this.instanceBlockStateTable.add(instanceKey, blockState.fst, rule, blockState.snd);
+
+			instanceMonitor.worked(1);
+		} // end for each instance in the typestate analysis result.
+
+		// fill the instance to predecessors map if it's empty.
+		if (this.instanceToPredecessorsMap.isEmpty())
+			this.fillInstanceToPredecessorMap(engine);
+
+		// for each terminal operation call.
+		for (BasicBlockInContext<IExplodedBasicBlock> block : this.terminalBlockToPossibleReceivers.keySet()) {
+			OrdinalSet<InstanceKey> possibleReceivers = this.terminalBlockToPossibleReceivers.get(block);
+			// for each possible receiver of the terminal operation call.
+			for (InstanceKey instanceKey : possibleReceivers) {
+				Set<IDFAState> possibleStates = this.instanceBlockStateTable
+						.decode(this.computeMergedTypeState(instanceKey, block, rule));
+				Set<InstanceKey> possibleOriginStreams = this.computePossibleOriginStreams(instanceKey);
+				possibleOriginStreams.forEach(os -> {
+					// create a new map.
+					Map<TypestateRule, Set<IDFAState>> ruleToStates = new HashMap<>();
+					ruleToStates.put(rule, new HashSet<>(possibleStates));
+
+					// merge it.
+					this.originStreamToMergedTypeStateMap.merge(os, ruleToStates, (m1, m2) -> {
+						Set<IDFAState> states1 = m1.get(rule);
+						Set<IDFAState> states2 = m2.get(rule);
+
+						// if the states in for this rule are empty.
+						if (states1 == null) {
+							// create a new set.
+							states1 = new HashSet<>();
+
+							// put it in the map.
+							m1.put(rule, states1);
+						}
+
+						// since we're merging the second map into the
+						// first, nothing to do if the second map is empty.
+						if (states2 != null)
+							states1.addAll(states2);
+
+						// finally, return the second map.
+						return m1;
+					});
+				});
+			}
+		}
+
+		return ret;
+	}
+
+	/**
+	 * Solves the given rule and extracts the facts needed from the solver's
+	 * result, which is unreachable once this method returns.
+	 *
+	 * @param rule                        The rule to solve.
+	 * @param dfa                         The DFA of the given rule.
+	 * @param engine                      The engine whose pointer analysis and heap
+	 *                                    graph to use.
+	 * @param prunedCallGraph             The call graph to solve the rule over.
+	 * @param typeStateOptions            The options of the solver.
+	 * @param terminalOperationCallBlocks The blocks calling terminal operations
+	 *                                    along with their nodes.
+	 * @param demandedInstances           The instances to track or null to track
+	 *                                    all stream instances.
+	 * @return The facts extracted from the solver's result.
+	 */
+	private ExtractedFacts solveAndExtract(StreamAttributeTypestateRule rule, TypeStateProperty dfa,
+			EclipseProjectAnalysisEngine<InstanceKey> engine, CallGraph prunedCallGraph,
+			TypeStateOptions typeStateOptions, Collection<Pair<CGNode, ISSABasicBlock>> terminalOperationCallBlocks,
+			Collection<InstanceKey> demandedInstances, IProgressMonitor monitor)
+			throws PropertiesException, CancelException {
+		SubMonitor subMonitor = SubMonitor.convert(monitor, 60);
+		BenignOracle ora = new ModifiedBenignOracle(prunedCallGraph, engine.getPointerAnalysis());
+
+		LOGGER.info(() -> "Starting " + rule.getName() + " solver for: " + engine.getProject().getElementName());
+		TrackingUniqueSolver solver;
+
+		if (demandedInstances == null)
+			// this gets a solver that tracks all streams.
+			solver = TypestateSolverFactory.getSolver(engine.getOptions(), prunedCallGraph,
+					engine.getPointerAnalysis(), engine.getHeapGraph(), dfa, ora, typeStateOptions, null, null, null);
+		else
+			// this gets a solver that tracks only the demanded instances.
+			solver = TypestateSolverFactory.getSolver(prunedCallGraph, engine.getPointerAnalysis(),
+					engine.getHeapGraph(), dfa, ora, typeStateOptions, null, null, null, demandedInstances);
+
+		solver.setBudgetedProgressMonitorFactory(engine::createTypestateBudgetedProgressMonitor);
+		solver.setInstanceTimeBudget(this.getTypestateInstanceTimeBudget());
+		solver.setTimeBudget(this.getTypestateRuleTimeBudget());
+
+		AggregateSolverResult result;
+		boolean ruleOverBudget = false;
+		long start = System.currentTimeMillis();
+		try {
+			result = (AggregateSolverResult) solver.perform(subMonitor.split(50, SubMonitor.SUPPRESS_NONE));
+		} catch (SolverTimeoutException e) {
+			// use the partial result. The instances not yet solved for are over budget.
+			LOGGER.warning(() -> "Typestate rule budget exceeded for: " + rule.getName() + " in: "
+					+ engine.getProject().getElementName() + ".");
+			result = (AggregateSolverResult) e.getResult();
+			ruleOverBudget = true;
+		} catch (MaxFindingsException | SetUpException | WalaException e) {
+			throw new RuntimeException("Exception caught during typestate analysis.", e);
+		}
+		long solverTime = System.currentTimeMillis() - start;
+		LOGGER.info(() -> "Solved " + rule.getName() + " in: " + solverTime + " ms.");
+
+		// record typestate statistics.
+		outputTypeStateStatistics(result);
+
+		// collect the instances in the typestate analysis result that are within
+		// budget.
+		Set<InstanceKey> instancesOverBudget = new HashSet<>(solver.getInstancesOverBudget());
+		Set<InstanceKey> processedInstances = new HashSet<>();
+		List<InstanceKey> instances = new ArrayList<>(result.totalInstancesNum());
+
+		for (Iterator<InstanceKey> it = result.iterateInstances(); it.hasNext();) {
+			InstanceKey instanceKey = it.next();
+			processedInstances.add(instanceKey);
+
+			if (!instancesOverBudget.contains(instanceKey))
+				instances.add(instanceKey);
+		}
+
+		// if the rule is over budget, the tracked instances not yet processed are as
+		// well.
+		if (ruleOverBudget)
+			for (InstanceKey instanceKey : solver.getTrackedInstances())
+				if (!processedInstances.contains(instanceKey))
+					instancesOverBudget.add(instanceKey);
+
+		if (!instancesOverBudget.isEmpty())
+			LOGGER.warning(() -> "Skipping: " + instancesOverBudget.size() + " instances over budget for: "
+					+ rule.getName() + ".");
+
+		Statistics statistics = new Statistics(result.processedInstancesNum(), result.skippedInstances(),
+				solverTime);
+
+		// index the supergraphs of the instance results and find the terminal
+		// operation call blocks in each.
+		Set<ICFGSupergraph> supergraphs = new HashSet<>();
+		Map<BasicBlockInContext<IExplodedBasicBlock>, Pair<CGNode, ISSABasicBlock>> terminalBlocksInContext = new LinkedHashMap<>();
+
+		for (InstanceKey instanceKey : instances) {
+			ICFGSupergraph supergraph = ((TypeStateResult) result.getInstanceResult(instanceKey)).getSupergraph();
+
+			if (supergraphs.add(supergraph))
+				// for each terminal operation call block.
+				for (Pair<CGNode, ISSABasicBlock> terminalOperationCallBlock : terminalOperationCallBlocks) {
+					CGNode cgNode = terminalOperationCallBlock.fst;
+					ISSABasicBlock block = terminalOperationCallBlock.snd;
+
+					BasicBlockInContext<IExplodedBasicBlock> blockInContext = this
+							.getBasicBlockInContextForBlock(block, cgNode, supergraph).orElseThrow(
+									() -> new IllegalStateException("No basic block in context for block: " + block));
+
+					terminalBlocksInContext.putIfAbsent(blockInContext, terminalOperationCallBlock);
+				}
+		}
+
+		// extract the states of each instance.
+		List<List<Pair<BasicBlockInContext<IExplodedBasicBlock>, IDFAState>>> instanceStates = new ArrayList<>(
+				instances.size());
+
+		for (InstanceKey instanceKey : instances)
+			instanceStates.add(this.extractStates(instanceKey, (TypeStateResult) result.getInstanceResult(instanceKey),
+					rule, terminalOperationCallBlocks, subMonitor));
+
+		// the supergraphs of this result are no longer needed.
+		supergraphs.forEach(this.supergraphToBlockInContextTable::remove);
+		subMonitor.worked(10);
+
+		return new ExtractedFacts(statistics, instances, instanceStates, terminalBlocksInContext,
+				instancesOverBudget);
 	}
 
 	public Map<TypestateRule, Statistics> start(Set<Stream> streamSet, EclipseProjectAnalysisEngine<InstanceKey> engine,
@@ -981,8 +1725,8 @@ public class StreamStateMachine {
 		SubMonitor subMonitor = SubMonitor.convert(monitor, "Performing typestate analysis (may take a while)", 100);
 		Map<TypestateRule, Statistics> ret = new HashMap<>();
 
-		CallGraph prunedCallGraph = pruneCallGraph(engine.getCallGraph(), engine.getClassHierarchy());
-		BenignOracle ora = new ModifiedBenignOracle(prunedCallGraph, engine.getPointerAnalysis());
+		CallGraph prunedCallGraph = pruneCallGraph(engine.getCallGraph(), engine.getClassHierarchy(),
+				engine.getMethodToStreamNodeMap());
 
 		PropertiesManager manager = PropertiesManager.initFromMap(Collections.emptyMap());
 		PropertiesManager.registerProperties(
@@ -995,231 +1739,57 @@ public class StreamStateMachine {
 				"Ljava/util/stream/BaseStream");
 		IClass streamClass = engine.getClassHierarchy().lookupClass(typeReference);
 
-		StreamAttributeTypestateRule[] ruleArray = createStreamAttributeTypestateRules(streamClass);
+		StreamAttributeTypestateRule[] ruleArray = createStreamAttributeTypestateRules(streamClass,
+				this.shouldUseProductTypestateRule());
 
-		// for each rule.
-		SubMonitor ruleMonitor = subMonitor.split(70, SubMonitor.SUPPRESS_NONE).setWorkRemaining(ruleArray.length);
+		// collect the terminal operation calls once for all rules and instances.
+		Collection<Pair<CGNode, ISSABasicBlock>> terminalOperationCallBlocks = getTerminalOperationCallBlocks(
+				prunedCallGraph);
 
-		for (StreamAttributeTypestateRule rule : ruleArray) {
-			// create a DFA based on the rule.
-			TypeStateProperty dfa = new TypeStateProperty(rule, engine.getClassHierarchy());
+		// create a DFA based on each rule.
+		Map<StreamAttributeTypestateRule, TypeStateProperty> ruleToDFA = new LinkedHashMap<>();
 
-			// this gets a solver that tracks all streams.
-			LOGGER.info(() -> "Starting " + rule.getName() + " solver for: " + engine.getProject().getElementName());
-			ISafeSolver solver = TypestateSolverFactory.getSolver(engine.getOptions(), prunedCallGraph,
-					engine.getPointerAnalysis(), engine.getHeapGraph(), dfa, ora, typeStateOptions, null, null, null);
+		for (StreamAttributeTypestateRule rule : ruleArray)
+			ruleToDFA.put(rule, new TypeStateProperty(rule, engine.getClassHierarchy()));
 
-			AggregateSolverResult result;
-			try {
-				result = (AggregateSolverResult) solver.perform(ruleMonitor.split(50, SubMonitor.SUPPRESS_NONE));
-			} catch (SolverTimeoutException | MaxFindingsException | SetUpException | WalaException e) {
-				throw new RuntimeException("Exception caught during typestate analysis.", e);
-			}
+		// in the demand-driven mode, only track the instances of the streams
+		// surviving the checks not requiring typestate analysis.
+		Collection<InstanceKey> demandedInstances = null;
 
-			// record typestate statistics.
-			outputTypeStateStatistics(result);
-
-			Statistics lastStatistics = ret.put(rule,
-					new Statistics(result.processedInstancesNum(), result.skippedInstances()));
-			assert lastStatistics == null : "Reassociating statistics.";
-
-			// for each instance in the typestate analysis result.
-			SubMonitor instanceMonitor = ruleMonitor.split(20, SubMonitor.SUPPRESS_NONE)
-					.setWorkRemaining(result.totalInstancesNum());
-
-			for (Iterator<InstanceKey> iterator = result.iterateInstances(); iterator.hasNext();) {
-				// get the instance's key.
-				InstanceKey instanceKey = iterator.next();
-
-				// add to tracked instances.
-				this.trackedInstances.add(instanceKey);
-
-				// get the result for that instance.
-				TypeStateResult instanceResult = (TypeStateResult) result.getInstanceResult(instanceKey);
-
-				// get the supergraph for the instance result.
-				ICFGSupergraph supergraph = instanceResult.getSupergraph();
-
-				// TODO: Can this be somehow rewritten to get blocks corresponding to terminal
-				// operations?
-				// for each call graph node in the call graph.
-				for (CGNode cgNode : prunedCallGraph)
-					// separating client from library code, improving performance #103.
-					if (cgNode.getMethod().getDeclaringClass().getClassLoader().getReference()
-							.equals(ClassLoaderReference.Application)) {
-
-						// we can verify that only client nodes are being considered
-						LOGGER.fine(() -> "Examining client call graph node: " + cgNode);
-
-						// for each call site in the call graph node.
-						for (Iterator<CallSiteReference> callSites = cgNode.iterateCallSites(); callSites.hasNext();) {
-							// get the call site reference.
-							CallSiteReference callSiteReference = callSites.next();
-
-							// get the (declared) called method at the call site.
-							MethodReference calledMethod = callSiteReference.getDeclaredTarget();
-
-							// is it a terminal operation? TODO: Should this be
-							// cached somehow? Collection of all terminal operation
-							// invocations?
-							if (isTerminalOperation(calledMethod)) {
-								// get the basic block for the call.
-								IR ir = cgNode.getIR();
-
-								ISSABasicBlock[] blocksForCall = ir.getBasicBlocksForCall(callSiteReference);
-
-								assert blocksForCall.length == 1 : "Expecting only a single basic block for the call: "
-										+ callSiteReference;
-
-								for (ISSABasicBlock block : blocksForCall) {
-									BasicBlockInContext<IExplodedBasicBlock> blockInContext = getBasicBlockInContextForBlock(
-											block, cgNode, supergraph)
-													.orElseThrow(() -> new IllegalStateException(
-															"No basic block in context for block: " + block));
-
-									if (!this.terminalBlockToPossibleReceivers.containsKey(blockInContext)) {
-										// associate possible receivers with the
-										// blockInContext.
-										// search through each instruction in the
-										// block.
-										int processedInstructions = 0;
-
-										for (SSAInstruction instruction : block) {
-											// if it's not an invoke instruction.
-											if (!(instruction instanceof SSAAbstractInvokeInstruction))
-												// skip it. Phi instructions will be handled by the pointer analysis
-												// below.
-												continue;
-
-											// Get the possible receivers. This
-											// number corresponds to the value
-											// number of the receiver of the method.
-											int valueNumberForReceiver = instruction.getUse(0);
-
-											// it should be represented by a pointer
-											// key.
-											PointerKey pointerKey = engine.getHeapGraph().getHeapModel()
-													.getPointerKeyForLocal(cgNode, valueNumberForReceiver);
-
-											// get the points to set for the
-											// receiver. This will give us all
-											// object instances that the receiver
-											// reference points to.
-											OrdinalSet<InstanceKey> pointsToSet = engine.getPointerAnalysis()
-													.getPointsToSet(pointerKey);
-											assert pointsToSet != null : "The points-to set (I think) should not be null for pointer: "
-													+ pointerKey;
-
-											OrdinalSet<InstanceKey> previousReceivers = this.terminalBlockToPossibleReceivers
-													.put(blockInContext, pointsToSet);
-											assert previousReceivers == null : "Reassociating a blockInContext: "
-													+ blockInContext + " with a new points-to set: " + pointsToSet
-													+ " that was originally: " + previousReceivers;
-
-											++processedInstructions;
-										}
-
-										assert processedInstructions == 1 : "Expecting to process one and only one instruction here.";
-									}
-
-									IntSet resultingFacts = instanceResult.getResult().getResult(blockInContext);
-									for (IntIterator factIterator = resultingFacts.intIterator(); factIterator
-											.hasNext();) {
-										int fact = factIterator.next();
-
-										// retrieve the state set for this instance
-										// and block.
-										Map<TypestateRule, Set<IDFAState>> ruleToStates = this.instanceBlockStateTable
-												.get(instanceKey, blockInContext);
-
-										// if it doesn't yet exist.
-										if (ruleToStates == null) {
-											// allocate a new rule map.
-											ruleToStates = new HashMap<>();
-
-											// place it in the table.
-											this.instanceBlockStateTable.put(instanceKey, blockInContext, ruleToStates);
-										}
-
-										Set<IDFAState> stateSet = ruleToStates.get(rule);
-
-										// if it does not yet exist.
-										if (stateSet == null) {
-											// allocate a new set.
-											stateSet = new HashSet<>();
-
-											// place it in the map.
-											ruleToStates.put(rule, stateSet);
-										}
-
-										// get the facts.
-										Factoid factoid = instanceResult.getDomain().getMappedObject(fact);
-										if (factoid != DUMMY_ZERO) {
-											BaseFactoid baseFactoid = (BaseFactoid) factoid;
-											assert baseFactoid.instance.equals(
-													instanceKey) : "Sanity check that the fact instance should be the same as the instance being examined.";
-
-											// add the encountered state to the set.
-											LOGGER.fine(() -> "Adding state: " + baseFactoid.state + " for instance: "
-													+ baseFactoid.instance + " for block: " + block + " for rule: "
-													+ rule.getName());
-											stateSet.add(baseFactoid.state);
-										}
-									}
-								}
-							}
-						}
-					}
-				instanceMonitor.worked(1);
-			} // end for each instance in the typestate analysis result.
-
-			// fill the instance to predecessors map if it's empty.
-			if (this.instanceToPredecessorsMap.isEmpty())
-				this.fillInstanceToPredecessorMap(engine);
-
-			// for each terminal operation call.
-			for (BasicBlockInContext<IExplodedBasicBlock> block : this.terminalBlockToPossibleReceivers.keySet()) {
-				OrdinalSet<InstanceKey> possibleReceivers = this.terminalBlockToPossibleReceivers.get(block);
-				// for each possible receiver of the terminal operation call.
-				for (InstanceKey instanceKey : possibleReceivers) {
-					Set<IDFAState> possibleStates = this.computeMergedTypeState(instanceKey, block, rule);
-					Set<InstanceKey> possibleOriginStreams = this.computePossibleOriginStreams(instanceKey);
-					possibleOriginStreams.forEach(os -> {
-						// create a new map.
-						Map<TypestateRule, Set<IDFAState>> ruleToStates = new HashMap<>();
-						ruleToStates.put(rule, new HashSet<>(possibleStates));
-
-						// merge it.
-						this.originStreamToMergedTypeStateMap.merge(os, ruleToStates, (m1, m2) -> {
-							Set<IDFAState> states1 = m1.get(rule);
-							Set<IDFAState> states2 = m2.get(rule);
-
-							// if the states in for this rule are empty.
-							if (states1 == null) {
-								// create a new set.
-								states1 = new HashSet<>();
-
-								// put it in the map.
-								m1.put(rule, states1);
-							}
+		if (this.shouldUseDemandDrivenTypestate())
+			demandedInstances = this.computeDemandedInstances(streamSet, engine, ruleToDFA.get(ruleArray[0]),
+					terminalOperationCallBlocks, subMonitor.split(5, SubMonitor.SUPPRESS_NONE));
 
-							// since we're merging the second map into the
-							// first, nothing to do if the second map is empty.
-							if (states2 != null)
-								states1.addAll(states2);
+		// for each rule.
+		SubMonitor ruleMonitor = subMonitor.split(70, SubMonitor.SUPPRESS_NONE).setWorkRemaining(ruleArray.length);
 
-							// finally, return the second map.
-							return m1;
-						});
-					});
-				}
-			}
-			ruleMonitor.worked(1);
-		} // end for each rule.
+		if (demandedInstances != null && demandedInstances.isEmpty()) {
+			// no need to solve anything.
+			LOGGER.info(() -> "No stream demands typestate analysis for: " + engine.getProject().getElementName());
+
+			for (StreamAttributeTypestateRule rule : ruleArray)
+				ret.put(rule, new Statistics(0, 0, 0));
+		} else
+			// the rules are solved one after another as they share the engine's class
+			// hierarchy, pointer analysis, and IR cache, which aren't thread-safe.
+			for (StreamAttributeTypestateRule rule : ruleArray)
+				ret.put(rule, this.solve(rule, ruleToDFA.get(rule), engine, prunedCallGraph, typeStateOptions,
+						terminalOperationCallBlocks, demandedInstances,
+						ruleMonitor.split(1, SubMonitor.SUPPRESS_NONE)));
 
 		// create a mapping between stream instances (from the analysis) and stream
-		// objects (from the refactoring).
-		this.fillInstanceToStreamMap(streamSet, engine, subMonitor.split(5, SubMonitor.SUPPRESS_NONE));
+		// objects (from the refactoring) unless it was created on demand.
+		if (!this.shouldUseDemandDrivenTypestate())
+			this.fillInstanceToStreamMap(streamSet, engine, subMonitor.split(5, SubMonitor.SUPPRESS_NONE));
+
+		// the streams originating the instances over budget can't be analyzed.
+		Set<Stream> streamsOverBudget = this.instancesOverBudget.stream()
+				.flatMap(ik -> this.computePossibleOriginStreams(ik).stream()).map(this.instanceToStreamMap::get)
+				.filter(Objects::nonNull).collect(Collectors.toSet());
+
+		for (Stream stream : streamsOverBudget)
+			stream.addStatusEntry(PreconditionFailure.TYPESTATE_BUDGET_EXCEEDED,
+					"Typestate analysis of stream: " + stream.getCreation() + " exceeds its time budget.");
 
 		this.discoverTerminalOperations(subMonitor.split(5, SubMonitor.SUPPRESS_NONE));
 
@@ -1249,10 +1819,11 @@ public class StreamStateMachine {
 				return true;
 		};
 
-		this.instanceToStatefulIntermediateOperationContainment.entrySet().stream().filter(Entry::getValue)
-				.map(Entry::getKey).flatMap(ik -> this.getAllPredecessors(ik).stream())
-				.collect(Collectors.toMap(Function.identity(), v -> true, remappingFunction)).forEach((k,
-						v) -> this.instanceToStatefulIntermediateOperationContainment.merge(k, v, remappingFunction));
+		Set<InstanceKey> instancesWithStatefulIntermediateOperations = this.instanceToStatefulIntermediateOperationContainment
+				.entrySet().stream().filter(Entry::getValue).map(Entry::getKey).collect(Collectors.toSet());
+
+		this.getInstancePredecessorClosure().getAllPredecessors(instancesWithStatefulIntermediateOperations).forEach(
+				ik -> this.instanceToStatefulIntermediateOperationContainment.merge(ik, true, remappingFunction));
 
 		// propagate the instances whose reduce ordering possibly matters.
 		this.propagateStreamInstanceProperty(this.instancesWhoseReduceOrderingPossiblyMatters);
@@ -1295,18 +1866,34 @@ public class StreamStateMachine {
 	/**
 	 * This method is used to prune call graph. For each CGNode in the callGraph, it
 	 * check whether it is a stream node. If it is, then keep it. If it not, then
-	 * remove it.
+	 * remove it. The nodes are classified once per method.
 	 * 
 	 * @param callGraph
 	 * @param classHierarchy
+	 * @param methodToStreamNodeMap Whether the nodes of each method are stream
+	 *                              nodes, which is consulted and updated.
 	 * @return A pruned callGraph
+	 * @see Util#isStreamNode(CGNode, IClassHierarchy)
+	 * @apiNote The methods are classified sequentially as classifying them
+	 *          queries the IR cache and the class hierarchy, neither of which is
+	 *          thread-safe.
 	 */
-	private static CallGraph pruneCallGraph(CallGraph callGraph, IClassHierarchy classHierarchy) {
+	private static CallGraph pruneCallGraph(CallGraph callGraph, IClassHierarchy classHierarchy,
+			Map<IMethod, Boolean> methodToStreamNodeMap) {
 		int numberOfNodesInCallGraph = callGraph.getNumberOfNodes();
 		LOGGER.info("The number of nodes in the call graph: " + numberOfNodesInCallGraph);
+		int numberOfClassifiedMethods = methodToStreamNodeMap.size();
+
+		// classify the methods not yet classified.
+		for (CGNode node : callGraph)
+			methodToStreamNodeMap.computeIfAbsent(node.getMethod(), m -> Util.isStreamNode(node, classHierarchy));
+
+		LOGGER.info("The number of classified methods: " + (methodToStreamNodeMap.size() - numberOfClassifiedMethods)
+				+ ". The number of reused classifications: " + numberOfClassifiedMethods);
+
 		HashSet<CGNode> keep = new HashSet<>();
 		for (CGNode node : callGraph) {
-			if (Util.isStreamNode(node, classHierarchy))
+			if (methodToStreamNodeMap.get(node.getMethod()))
 				keep.add(node);
 		}
 
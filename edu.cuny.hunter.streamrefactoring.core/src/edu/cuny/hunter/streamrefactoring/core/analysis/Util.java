@@ -11,6 +11,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.function.Predicate;
@@ -413,12 +414,13 @@ public final class Util {
 	/**
 	 * This set is used to store visited values. Without this set, the method
 	 * getPossibleTypes could be infinitely recursively called and would never
-	 * return. So adding this set means to add a base case.
+	 * return. So adding this set means to add a base case. Thread-local since
+	 * projects may be analyzed concurrently.
 	 */
-	static private HashSet<Value> seenValues = new HashSet<>();
+	static private ThreadLocal<Set<Value>> seenValues = ThreadLocal.withInitial(HashSet::new);
 
 	static Collection<TypeAbstraction> getPossibleTypes(int valueNumber, TypeInference inference) {
-		seenValues.clear();
+		seenValues.get().clear();
 		return getPossibleTypesInternal(valueNumber, inference);
 	}
 
@@ -437,10 +439,10 @@ public final class Util {
 		if (value instanceof PhiValue) {
 
 			// avoid infinite recursion here
-			if (seenValues.contains(value))
+			if (seenValues.get().contains(value))
 				return ret;
 			else
-				seenValues.add(value);
+				seenValues.get().add(value);
 
 			// multiple possible types.
 			PhiValue phiValue = (PhiValue) value;
@@ -526,12 +528,18 @@ public final class Util {
 										e);
 							}
 
-							// let's assume that the source file is in the same project.
-							IJavaProject enclosingProject = engine.getProject();
-
 							String fqn = method.getDeclaringClass().getName().getPackage().toUnicodeString() + "."
 									+ method.getDeclaringClass().getName().getClassName().toUnicodeString();
-							IType type = enclosingProject.findType(fqn.replace('/', '.'));
+
+							// let's assume that the source file is in one of the analyzed projects.
+							IType type = null;
+
+							for (IJavaProject enclosingProject : engine.getProjects()) {
+								type = enclosingProject.findType(fqn.replace('/', '.'));
+
+								if (type != null)
+									break;
+							}
 							// FIXME: Need to (i) exclude from result timer and (ii) use the cache in
 							// OptimizeStreamsRefactoringProcessor #141.
 							CompilationUnit unit = RefactoringASTParser.parseWithASTProvider(type.getTypeRoot(), true,
@@ -821,33 +829,53 @@ public final class Util {
 	 * @param classHierarchy
 	 */
 	public static boolean isStreamNode(CGNode node, IClassHierarchy classHierarchy) {
-		if (isDeclaredStreamClass(node, classHierarchy))
+		if (isDeclaredStreamClass(node.getMethod(), classHierarchy))
 			return true;
 
-		IR ir = node.getIR();
+		return isStreamNode(node.getIR(), classHierarchy);
+	}
 
+	/**
+	 * Returns true iff any instruction of the given IR could involve a type
+	 * implementing {@link BaseStream}.
+	 *
+	 * @param ir
+	 *            The IR to check, which is only read.
+	 * @param classHierarchy
+	 *            The class hierarchy to look up types in.
+	 * @return True iff the given IR could involve a stream. Conservatively true
+	 *         if the IR is missing or empty.
+	 */
+	public static boolean isStreamNode(IR ir, IClassHierarchy classHierarchy) {
 		if (ir == null || ir.isEmptyIR())
 			return true;
 
+		// Most of instruction APIs provide the methods to get the return types.
+		StreamFindingVisitor visitor = new StreamFindingVisitor(classHierarchy);
+
+		// built lazily, once per IR.
+		TypeInference inference = null;
+
 		for (SSAInstruction instruction : ir.getInstructions()) {
 			if (instruction == null)
 				continue;
 
-			// Most of instruction APIs provide the methods to get the return types.
-			StreamFindingVisitor visitor = new StreamFindingVisitor(classHierarchy);
 			instruction.visit(visitor);
 
 			if (visitor.hasFoundStream())
 				return true;
 
 			// otherwise, let's check the defs and uses.
-			TypeInference inference = TypeInference.make(ir, false);
+			if (inference == null)
+				inference = TypeInference.make(ir, false);
+
+			TypeInference finalInference = inference;
 
 			Stream<TypeAbstraction> defs = IntStream.range(0, instruction.getNumberOfDefs())
-					.mapToObj(i -> instruction.getDef(i)).flatMap(d -> getPossibleTypes(d, inference).stream());
+					.mapToObj(i -> instruction.getDef(i)).flatMap(d -> getPossibleTypes(d, finalInference).stream());
 
 			Stream<TypeAbstraction> uses = IntStream.range(0, instruction.getNumberOfUses())
-					.mapToObj(i -> instruction.getUse(i)).flatMap(u -> getPossibleTypes(u, inference).stream());
+					.mapToObj(i -> instruction.getUse(i)).flatMap(u -> getPossibleTypes(u, finalInference).stream());
 
 			if (Stream.concat(defs, uses).anyMatch(t -> implementsBaseStream(t.getTypeReference(), classHierarchy)))
 				return true;
@@ -857,13 +885,12 @@ public final class Util {
 	}
 
 	/**
-	 * Check declared class for CGNode
+	 * Check declared class for method
 	 * 
-	 * @param node:
-	 *            CGNode in the CallGraph
+	 * @param method:
+	 *            The method of a CGNode in the CallGraph
 	 */
-	private static boolean isDeclaredStreamClass(CGNode node, IClassHierarchy classHierarchy) {
-		IMethod method = node.getMethod();
+	static boolean isDeclaredStreamClass(IMethod method, IClassHierarchy classHierarchy) {
 		if (implementsBaseStream(method.getDeclaringClass().getReference(), classHierarchy))
 			return true;
 		else
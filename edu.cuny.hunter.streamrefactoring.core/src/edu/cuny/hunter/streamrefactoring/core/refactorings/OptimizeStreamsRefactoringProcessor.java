@@ -110,6 +110,30 @@ public class OptimizeStreamsRefactoringProcessor extends RefactoringProcessor {
 		loggingLevel = level;
 	}
 
+	/**
+	 * True iff the N to use for streams should be increased at the creation sites
+	 * of streams that the call graph can't distinguish.
+	 */
+	private boolean adaptNForStreams;
+
+	/**
+	 * True iff analysis engines, along with their call graphs, should be cached
+	 * across invocations of this refactoring.
+	 */
+	private boolean cacheCallGraphs;
+
+	/**
+	 * The heap, in bytes, that may be in use while building a project's call
+	 * graph. Zero for no budget.
+	 */
+	private long callGraphHeapBudget;
+
+	/**
+	 * The time, in milliseconds, that building a project's call graph may take.
+	 * Zero for no budget.
+	 */
+	private long callGraphTimeBudget;
+
 	private Map<ICompilationUnit, CompilationUnitRewrite> compilationUnitToCompilationUnitRewriteMap = new HashMap<>();
 
 	/**
@@ -117,26 +141,83 @@ public class OptimizeStreamsRefactoringProcessor extends RefactoringProcessor {
 	 */
 	private TimeCollector excludedTimeCollector = new TimeCollector();
 
+	/**
+	 * True iff cached analysis engines should be invalidated by changes to the
+	 * Java model rather than rehashed upon each invocation of this refactoring.
+	 */
+	private boolean incremental;
+
 	private IJavaProject[] javaProjects;
 
 	/** Does the refactoring use a working copy layer? */
 	private final boolean layer;
 
+	/**
+	 * The maximum N to adapt to for streams. Zero to use the analyzer's default.
+	 */
+	private int maxNForStreams;
+
+	/**
+	 * True iff projects requiring one another should be analyzed together.
+	 */
+	private boolean mergeProjects;
+
 	private int nForStreams = N_FOR_STREAMS_DEFAULT;
 
+	/**
+	 * The time, in milliseconds, that may be spent adapting the N to use for
+	 * streams. Zero to use the analyzer's default.
+	 */
+	private long nForStreamsAdaptationTimeBudget;
+
 	private int numberOfProcessedStreamInstances;
 
 	private int numberOfSkippedStreamInstances;
 
+	/**
+	 * The maximum number of threads to use for analyzing projects concurrently.
+	 * Zero to use the analyzer's default.
+	 */
+	private int numberOfThreads;
+
+	/**
+	 * The heap, in bytes, expected to be needed for analyzing a single project.
+	 * Zero to use the analyzer's default.
+	 */
+	private long projectHeapBudget;
+
 	private Map<IJavaProject, Collection<Entrypoint>> projectToEntryPoints;
 
 	/** The code generation settings, or <code>null</code> */
 	private CodeGenerationSettings settings;
 
+	/**
+	 * True iff the primordial part of the class hierarchy should be shared among
+	 * analyzed projects using the same JRE.
+	 */
+	private boolean sharePrimordialClassHierarchy;
+
 	private Set<Stream> streamSet;
 
 	private Map<ITypeRoot, CompilationUnit> typeRootToCompilationUnitMap = new HashMap<>();
 
+	/**
+	 * The time, in milliseconds, that solving a typestate rule for a single stream
+	 * instance may take. Zero for no budget.
+	 */
+	private long typestateInstanceTimeBudget;
+
+	/**
+	 * The time, in milliseconds, that solving a typestate rule for all of a
+	 * project's stream instances may take. Zero for no budget.
+	 */
+	private long typestateRuleTimeBudget;
+
+	/**
+	 * The time, in milliseconds, spent in the typestate solvers.
+	 */
+	private long typestateSolverTime;
+
 	private Map<IType, ITypeHierarchy> typeToTypeHierarchyMap = new HashMap<>();
 
 	private boolean useImplicitBenchmarkEntrypoints = false;
@@ -147,6 +228,24 @@ public class OptimizeStreamsRefactoringProcessor extends RefactoringProcessor {
 
 	private boolean useImplicitTestEntrypoints = false;
 
+	/**
+	 * True iff the typestate rules should only be solved for the streams
+	 * surviving the checks not requiring typestate analysis.
+	 */
+	private boolean useDemandDrivenTypestate;
+
+	/**
+	 * True iff a single typestate rule whose automaton is the product of those of
+	 * the individual stream attributes should be used.
+	 */
+	private boolean useProductTypestateRule;
+
+	/**
+	 * True iff the stream library's pipeline implementation should be bypassed
+	 * using summaries of its operations.
+	 */
+	private boolean useStreamLibrarySummaries;
+
 	public OptimizeStreamsRefactoringProcessor() throws JavaModelException {
 		this(null, null, false, true, false, false, false, Optional.empty());
 	}
@@ -221,6 +320,31 @@ public class OptimizeStreamsRefactoringProcessor extends RefactoringProcessor {
 					this.getUseImplicitTestEntrypoints(), this.getUseImplicitBenchmarkEntrypoints(),
 					this.getUseImplicitJavaFXEntrypoints());
 
+			analyzer.setAdaptNForStreams(this.shouldAdaptNForStreams());
+			analyzer.setCacheCallGraphs(this.shouldCacheCallGraphs());
+			analyzer.setCallGraphHeapBudget(this.getCallGraphHeapBudget());
+			analyzer.setCallGraphTimeBudget(this.getCallGraphTimeBudget());
+			analyzer.setIncremental(this.shouldAnalyzeIncrementally());
+			analyzer.setMergeProjects(this.shouldMergeProjects());
+			analyzer.setSharePrimordialClassHierarchy(this.shouldSharePrimordialClassHierarchy());
+			analyzer.setTypestateInstanceTimeBudget(this.getTypestateInstanceTimeBudget());
+			analyzer.setTypestateRuleTimeBudget(this.getTypestateRuleTimeBudget());
+			analyzer.setUseDemandDrivenTypestate(this.shouldUseDemandDrivenTypestate());
+			analyzer.setUseProductTypestateRule(this.shouldUseProductTypestateRule());
+			analyzer.setUseStreamLibrarySummaries(this.shouldUseStreamLibrarySummaries());
+
+			if (this.getMaxNForStreams() > 0)
+				analyzer.setMaxNForStreams(this.getMaxNForStreams());
+
+			if (this.getNForStreamsAdaptationTimeBudget() > 0)
+				analyzer.setNForStreamsAdaptationTimeBudget(this.getNForStreamsAdaptationTimeBudget());
+
+			if (this.getNumberOfThreads() > 0)
+				analyzer.setNumberOfThreads(this.getNumberOfThreads());
+
+			if (this.getProjectHeapBudget() > 0)
+				analyzer.setProjectHeapBudget(this.getProjectHeapBudget());
+
 			this.setStreamSet(analyzer.getStreamSet());
 
 			IJavaProject[] projects = this.getJavaProjects();
@@ -254,6 +378,7 @@ public class OptimizeStreamsRefactoringProcessor extends RefactoringProcessor {
 			// set statistics for stream instances.
 			this.setNumberOfProcessedStreamInstances(analyzer.getNumberOfProcessedStreamInstances());
 			this.setNumberOfSkippedStreamInstances(analyzer.getNumberOfSkippedStreamInstances());
+			this.setTypestateSolverTime(analyzer.getTypestateSolverTime());
 
 			// map empty set to unprocessed projects.
 			for (IJavaProject project : projects)
@@ -406,6 +531,14 @@ public class OptimizeStreamsRefactoringProcessor extends RefactoringProcessor {
 		}
 	}
 
+	public long getCallGraphHeapBudget() {
+		return this.callGraphHeapBudget;
+	}
+
+	public long getCallGraphTimeBudget() {
+		return this.callGraphTimeBudget;
+	}
+
 	private CompilationUnit getCompilationUnit(ITypeRoot root, IProgressMonitor pm) {
 		CompilationUnit compilationUnit = this.getTypeRootToCompilationUnitMap().get(root);
 		if (compilationUnit == null) {
@@ -456,10 +589,18 @@ public class OptimizeStreamsRefactoringProcessor extends RefactoringProcessor {
 		return this.javaProjects;
 	}
 
+	public int getMaxNForStreams() {
+		return this.maxNForStreams;
+	}
+
 	public int getNForStreams() {
 		return this.nForStreams;
 	}
 
+	public long getNForStreamsAdaptationTimeBudget() {
+		return this.nForStreamsAdaptationTimeBudget;
+	}
+
 	public int getNumberOfProcessedStreamInstances() {
 		return this.numberOfProcessedStreamInstances;
 	}
@@ -468,6 +609,10 @@ public class OptimizeStreamsRefactoringProcessor extends RefactoringProcessor {
 		return this.numberOfSkippedStreamInstances;
 	}
 
+	public int getNumberOfThreads() {
+		return this.numberOfThreads;
+	}
+
 	public Set<Stream> getOptimizableStreams() {
 		Set<Stream> streamSet = this.getStreamSet();
 		return streamSet == null ? Collections.emptySet()
@@ -479,6 +624,10 @@ public class OptimizeStreamsRefactoringProcessor extends RefactoringProcessor {
 		return Messages.Name;
 	}
 
+	public long getProjectHeapBudget() {
+		return this.projectHeapBudget;
+	}
+
 	public Set<Stream> getStreamSet() {
 		return this.streamSet;
 	}
@@ -491,6 +640,18 @@ public class OptimizeStreamsRefactoringProcessor extends RefactoringProcessor {
 		return this.typeToTypeHierarchyMap;
 	}
 
+	public long getTypestateInstanceTimeBudget() {
+		return this.typestateInstanceTimeBudget;
+	}
+
+	public long getTypestateRuleTimeBudget() {
+		return this.typestateRuleTimeBudget;
+	}
+
+	public long getTypestateSolverTime() {
+		return this.typestateSolverTime;
+	}
+
 	public Set<Stream> getUnoptimizableStreams() {
 		return this.getStreamSet().parallelStream().filter(s -> s.getStatus().hasError()).collect(Collectors.toSet());
 	}
@@ -542,10 +703,42 @@ public class OptimizeStreamsRefactoringProcessor extends RefactoringProcessor {
 		manager.manage(rewrite.getCu(), change);
 	}
 
+	public void setAdaptNForStreams(boolean adaptNForStreams) {
+		this.adaptNForStreams = adaptNForStreams;
+	}
+
+	public void setCacheCallGraphs(boolean cacheCallGraphs) {
+		this.cacheCallGraphs = cacheCallGraphs;
+	}
+
+	public void setCallGraphHeapBudget(long callGraphHeapBudget) {
+		this.callGraphHeapBudget = callGraphHeapBudget;
+	}
+
+	public void setCallGraphTimeBudget(long callGraphTimeBudget) {
+		this.callGraphTimeBudget = callGraphTimeBudget;
+	}
+
+	public void setIncremental(boolean incremental) {
+		this.incremental = incremental;
+	}
+
+	public void setMaxNForStreams(int maxNForStreams) {
+		this.maxNForStreams = maxNForStreams;
+	}
+
+	public void setMergeProjects(boolean mergeProjects) {
+		this.mergeProjects = mergeProjects;
+	}
+
 	public void setNForStreams(int nForStreams) {
 		this.nForStreams = nForStreams;
 	}
 
+	public void setNForStreamsAdaptationTimeBudget(long nForStreamsAdaptationTimeBudget) {
+		this.nForStreamsAdaptationTimeBudget = nForStreamsAdaptationTimeBudget;
+	}
+
 	protected void setNumberOfProcessedStreamInstances(int numberOfProcessedStreamInstances) {
 		this.numberOfProcessedStreamInstances = numberOfProcessedStreamInstances;
 	}
@@ -554,10 +747,34 @@ public class OptimizeStreamsRefactoringProcessor extends RefactoringProcessor {
 		this.numberOfSkippedStreamInstances = numberOfSkippedStreamInstances;
 	}
 
+	public void setNumberOfThreads(int numberOfThreads) {
+		this.numberOfThreads = numberOfThreads;
+	}
+
+	public void setProjectHeapBudget(long projectHeapBudget) {
+		this.projectHeapBudget = projectHeapBudget;
+	}
+
+	public void setSharePrimordialClassHierarchy(boolean sharePrimordialClassHierarchy) {
+		this.sharePrimordialClassHierarchy = sharePrimordialClassHierarchy;
+	}
+
 	protected void setStreamSet(Set<Stream> streamSet) {
 		this.streamSet = streamSet;
 	}
 
+	public void setTypestateInstanceTimeBudget(long typestateInstanceTimeBudget) {
+		this.typestateInstanceTimeBudget = typestateInstanceTimeBudget;
+	}
+
+	public void setTypestateRuleTimeBudget(long typestateRuleTimeBudget) {
+		this.typestateRuleTimeBudget = typestateRuleTimeBudget;
+	}
+
+	protected void setTypestateSolverTime(long typestateSolverTime) {
+		this.typestateSolverTime = typestateSolverTime;
+	}
+
 	public void setUseImplicitBenchmarkEntrypoints(boolean useImplicitBenchmarkEntrypoints) {
 		this.useImplicitBenchmarkEntrypoints = useImplicitBenchmarkEntrypoints;
 	}
@@ -573,4 +790,48 @@ public class OptimizeStreamsRefactoringProcessor extends RefactoringProcessor {
 	public void setUseImplicitTestEntrypoints(boolean useImplicitTestEntrypoints) {
 		this.useImplicitTestEntrypoints = useImplicitTestEntrypoints;
 	}
+
+	public void setUseDemandDrivenTypestate(boolean useDemandDrivenTypestate) {
+		this.useDemandDrivenTypestate = useDemandDrivenTypestate;
+	}
+
+	public void setUseProductTypestateRule(boolean useProductTypestateRule) {
+		this.useProductTypestateRule = useProductTypestateRule;
+	}
+
+	public void setUseStreamLibrarySummaries(boolean useStreamLibrarySummaries) {
+		this.useStreamLibrarySummaries = useStreamLibrarySummaries;
+	}
+
+	public boolean shouldAdaptNForStreams() {
+		return this.adaptNForStreams;
+	}
+
+	public boolean shouldAnalyzeIncrementally() {
+		return this.incremental;
+	}
+
+	public boolean shouldCacheCallGraphs() {
+		return this.cacheCallGraphs;
+	}
+
+	public boolean shouldMergeProjects() {
+		return this.mergeProjects;
+	}
+
+	public boolean shouldSharePrimordialClassHierarchy() {
+		return this.sharePrimordialClassHierarchy;
+	}
+
+	public boolean shouldUseDemandDrivenTypestate() {
+		return this.useDemandDrivenTypestate;
+	}
+
+	public boolean shouldUseProductTypestateRule() {
+		return this.useProductTypestateRule;
+	}
+
+	public boolean shouldUseStreamLibrarySummaries() {
+		return this.useStreamLibrarySummaries;
+	}
 }
@@ -0,0 +1,59 @@
+package edu.cuny.hunter.streamrefactoring.core.safe;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.logging.Logger;
+
+import com.ibm.safe.internal.exceptions.PropertiesException;
+import com.ibm.safe.reporting.IReporter;
+import com.ibm.safe.typestate.core.BenignOracle;
+import com.ibm.safe.typestate.core.TypeStateProperty;
+import com.ibm.safe.typestate.merge.IMergeFunctionFactory;
+import com.ibm.safe.typestate.metrics.TypeStateMetrics;
+import com.ibm.safe.typestate.mine.TraceReporter;
+import com.ibm.safe.typestate.options.TypeStateOptions;
+import com.ibm.wala.escape.ILiveObjectAnalysis;
+import com.ibm.wala.ipa.callgraph.CallGraph;
+import com.ibm.wala.ipa.callgraph.propagation.InstanceKey;
+import com.ibm.wala.ipa.callgraph.propagation.PointerAnalysis;
+
+import edu.cuny.hunter.streamrefactoring.core.utils.LoggerNames;
+
+/**
+ * A {@link TrackingUniqueSolver} that only tracks the given instances, e.g.,
+ * those on demand, among those whose type is tracked by the DFA.
+ */
+public class InstanceBasedSolver extends TrackingUniqueSolver {
+
+	private static final Logger LOGGER = Logger.getLogger(LoggerNames.LOGGER_NAME);
+
+	private Collection<InstanceKey> instances;
+
+	public InstanceBasedSolver(CallGraph cg, PointerAnalysis<?> pointerAnalysis, TypeStateProperty property,
+			TypeStateOptions options, ILiveObjectAnalysis live, BenignOracle ora, TypeStateMetrics metrics,
+			IReporter reporter, TraceReporter traceReporter, IMergeFunctionFactory mergeFactory,
+			Collection<InstanceKey> instances) {
+		super(cg, pointerAnalysis, property, options, live, ora, metrics, reporter, traceReporter, mergeFactory);
+		this.instances = instances;
+	}
+
+	@Override
+	protected Collection<InstanceKey> computeTrackedInstances() throws PropertiesException {
+		Collection<InstanceKey> ret = new HashSet<>();
+
+		// compute all instances whose type is tracked by the DFA.
+		Collection<InstanceKey> trackedInstancesByType = this.computeTrackedInstancesByType();
+
+		for (InstanceKey instanceKey : trackedInstancesByType)
+			if (this.getInstances().contains(instanceKey))
+				ret.add(instanceKey);
+
+		LOGGER.info("Tracking: " + ret.size() + " of " + trackedInstancesByType.size() + " instances.");
+		this.setTrackedInstances(ret);
+		return ret;
+	}
+
+	protected Collection<InstanceKey> getInstances() {
+		return this.instances;
+	}
+}
@@ -1,24 +1,95 @@
 package edu.cuny.hunter.streamrefactoring.core.safe;
 
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.LongFunction;
 
+import org.eclipse.core.runtime.IProgressMonitor;
+
+import com.ibm.safe.Factoid;
+import com.ibm.safe.internal.exceptions.MaxFindingsException;
 import com.ibm.safe.internal.exceptions.PropertiesException;
+import com.ibm.safe.internal.exceptions.SetUpException;
+import com.ibm.safe.internal.exceptions.SolverTimeoutException;
 import com.ibm.safe.reporting.IReporter;
+import com.ibm.safe.reporting.message.AggregateSolverResult;
+import com.ibm.safe.reporting.message.ISolverResult;
 import com.ibm.safe.typestate.core.BenignOracle;
+import com.ibm.safe.typestate.core.TypeStateProblem;
+import com.ibm.safe.typestate.core.TypeStateResult;
+import com.ibm.safe.typestate.core.WholeProgramSupergraph;
 import com.ibm.safe.typestate.merge.IMergeFunctionFactory;
 import com.ibm.safe.typestate.metrics.TypeStateMetrics;
 import com.ibm.safe.typestate.mine.TraceReporter;
 import com.ibm.safe.typestate.options.TypeStateOptions;
 import com.ibm.safe.typestate.rules.ITypeStateDFA;
 import com.ibm.safe.typestate.unique.UniqueSolver;
+import com.ibm.wala.dataflow.IFDS.TabulationCancelException;
+import com.ibm.wala.dataflow.IFDS.TabulationResult;
+import com.ibm.wala.dataflow.IFDS.TabulationSolver;
 import com.ibm.wala.escape.ILiveObjectAnalysis;
+import com.ibm.wala.ipa.callgraph.AnalysisCache;
+import com.ibm.wala.ipa.callgraph.CGNode;
 import com.ibm.wala.ipa.callgraph.CallGraph;
 import com.ibm.wala.ipa.callgraph.propagation.InstanceKey;
 import com.ibm.wala.ipa.callgraph.propagation.PointerAnalysis;
+import com.ibm.wala.ipa.cfg.BasicBlockInContext;
+import com.ibm.wala.ssa.SSAInstruction;
+import com.ibm.wala.ssa.analysis.IExplodedBasicBlock;
+import com.ibm.wala.util.CancelException;
+import com.ibm.wala.util.WalaException;
+import com.ibm.wala.util.collections.Pair;
+
+import edu.cuny.hunter.streamrefactoring.core.wala.BudgetedProgressMonitor;
+import edu.cuny.hunter.streamrefactoring.core.wala.EclipseProjectAnalysisEngine;
 
 // NOTE: UniqueSolver isn't sound.
 public class TrackingUniqueSolver extends UniqueSolver {
 
+	/**
+	 * Creates the monitors bounding the solver by a time budget given in
+	 * milliseconds.
+	 */
+	private LongFunction<BudgetedProgressMonitor> budgetedProgressMonitorFactory = timeBudget -> new BudgetedProgressMonitor(
+			null, timeBudget, 0);
+
+	/**
+	 * The time in milliseconds, since the epoch, after which the remaining
+	 * instances are skipped. {@link Long#MAX_VALUE} if time isn't budgeted.
+	 */
+	private long deadline = Long.MAX_VALUE;
+
+	/**
+	 * True iff instances were skipped because the time budget was exceeded.
+	 */
+	private boolean deadlineExceeded;
+
+	/**
+	 * The time, in milliseconds, that solving for a single instance may take. Zero
+	 * for no budget.
+	 */
+	private long instanceTimeBudget;
+
+	/**
+	 * The instances skipped because they exceeded a time budget.
+	 */
+	private Set<InstanceKey> instancesOverBudget = Collections.synchronizedSet(new HashSet<>());
+
+	/**
+	 * The time, in milliseconds, that solving for all instances may take. Zero for
+	 * no budget.
+	 */
+	private long timeBudget;
+
+	/**
+	 * Monitors the time budget for all instances or null if time isn't
+	 * budgeted.
+	 */
+	private BudgetedProgressMonitor timeBudgetMonitor;
+
 	private Collection<InstanceKey> trackedInstances;
 
 	public TrackingUniqueSolver(CallGraph cg, PointerAnalysis pointerAnalysis, ITypeStateDFA dfa,
@@ -34,12 +105,192 @@ public class TrackingUniqueSolver extends UniqueSolver {
 		return instances;
 	}
 
+	/**
+	 * Returns the instances skipped because solving for them exceeded the
+	 * instance time budget or the time budget. The results of these instances,
+	 * if any, are partial and shouldn't be used.
+	 *
+	 * @return The instances over budget.
+	 * @see #setInstanceTimeBudget(long)
+	 * @see #setTimeBudget(long)
+	 */
+	public Set<InstanceKey> getInstancesOverBudget() {
+		return this.instancesOverBudget;
+	}
+
+	public long getInstanceTimeBudget() {
+		return this.instanceTimeBudget;
+	}
+
+	public long getTimeBudget() {
+		return this.timeBudget;
+	}
+
 	public Collection<InstanceKey> getTrackedInstances() {
 		return this.trackedInstances;
 	}
 
+	/**
+	 * Returns true iff the time budget for all instances has been exceeded.
+	 */
+	private boolean isTimeBudgetExceeded() {
+		return this.timeBudgetMonitor != null && this.timeBudgetMonitor.isBudgetExceeded();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @throws SolverTimeoutException
+	 *             If the time budget is exceeded. The partial result of the
+	 *             exception contains the instances solved so far and, without
+	 *             a result, those skipped afterward.
+	 */
+	@Override
+	public ISolverResult perform(IProgressMonitor monitor) throws WalaException, SolverTimeoutException,
+			PropertiesException, MaxFindingsException, SetUpException, CancelException {
+		this.deadline = this.getTimeBudget() > 0 ? System.currentTimeMillis() + this.getTimeBudget() : Long.MAX_VALUE;
+		this.deadlineExceeded = false;
+		this.timeBudgetMonitor = this.getTimeBudget() > 0
+				? this.budgetedProgressMonitorFactory.apply(this.getTimeBudget())
+				: null;
+
+		ISolverResult result = super.perform(monitor);
+
+		// the remaining instances have been skipped.
+		if (this.deadlineExceeded)
+			throw new SolverTimeoutException(result);
+
+		return result;
+	}
+
+	/**
+	 * Set how the monitors bounding the solver by a time budget are created.
+	 *
+	 * @param budgetedProgressMonitorFactory
+	 *            Creates a monitor given its time budget in milliseconds.
+	 * @see EclipseProjectAnalysisEngine#createTypestateBudgetedProgressMonitor(long)
+	 */
+	public void setBudgetedProgressMonitorFactory(
+			LongFunction<BudgetedProgressMonitor> budgetedProgressMonitorFactory) {
+		this.budgetedProgressMonitorFactory = budgetedProgressMonitorFactory;
+	}
+
+	/**
+	 * Set the time that solving for a single instance may take. Instances
+	 * exceeding it are skipped.
+	 *
+	 * @param instanceTimeBudget
+	 *            The time budget in milliseconds or zero for none.
+	 * @see #getInstancesOverBudget()
+	 */
+	public void setInstanceTimeBudget(long instanceTimeBudget) {
+		this.instanceTimeBudget = instanceTimeBudget;
+	}
+
+	/**
+	 * Set the time that solving for all instances may take. Once exceeded, the
+	 * remaining instances are skipped and {@link #perform(IProgressMonitor)}
+	 * throws a {@link SolverTimeoutException} with the partial result.
+	 *
+	 * @param timeBudget
+	 *            The time budget in milliseconds or zero for none.
+	 * @see #getInstancesOverBudget()
+	 */
+	public void setTimeBudget(long timeBudget) {
+		this.timeBudget = timeBudget;
+	}
+
 	protected void setTrackedInstances(Collection<InstanceKey> trackedInstances) {
 		this.trackedInstances = trackedInstances;
 	}
 
-}
\ No newline at end of file
+	/**
+	 * Skips the given instances because they're over budget. Once the time
+	 * budget is exceeded, the remaining instances are skipped without being
+	 * solved for, and {@link #perform(IProgressMonitor)} throws a
+	 * {@link SolverTimeoutException} afterward. The thread isn't interrupted as
+	 * it may be a pooled worker.
+	 */
+	private void skipInstancesOverBudget(Collection<InstanceKey> instances) {
+		this.getInstancesOverBudget().addAll(instances);
+
+		if (this.isTimeBudgetExceeded())
+			this.deadlineExceeded = true;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @apiNote Not updated once the time budget is exceeded, as the instances
+	 *          skipped afterward have no result.
+	 */
+	@Override
+	protected void updateBenignOracle(AggregateSolverResult result, Collection<InstanceKey> instances,
+			Map<InstanceKey, Set<Pair<CGNode, SSAInstruction>>> possibleErrorLocations) {
+		if (!this.deadlineExceeded)
+			super.updateBenignOracle(result, instances, possibleErrorLocations);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @apiNote Under a time budget, the tabulation solver is monitored and
+	 *          instances it can't solve within budget are skipped. Mining and
+	 *          witness generation aren't budgeted.
+	 */
+	@Override
+	protected TypeStateResult solveForInstances(Collection<InstanceKey> instances, AnalysisCache cache)
+			throws WalaException, PropertiesException, SetUpException, CancelException {
+		if (this.isTimeBudgetExceeded()) {
+			this.skipInstancesOverBudget(instances);
+			return null;
+		}
+
+		long budget = this.getInstanceTimeBudget();
+
+		if (this.deadline != Long.MAX_VALUE) {
+			// the deadline may have passed since the check above.
+			long remainingTime = Math.max(1, this.deadline - System.currentTimeMillis());
+			budget = budget > 0 ? Math.min(budget, remainingTime) : remainingTime;
+		}
+
+		if (budget <= 0 || this.getOptions().shouldMineDFA() || this.getOptions().shouldGenerateWitness())
+			return super.solveForInstances(instances, cache);
+
+		// as in the super class but with a budgeted tabulation solver.
+		Collection<CGNode> nodesThatMatter = this.computeNodesThatMatter(this.toOrdinalInstanceSet(instances));
+
+		if (nodesThatMatter.isEmpty())
+			return null;
+
+		WholeProgramSupergraph supergraph = this.buildSupergraph(cache, nodesThatMatter);
+
+		if (this.getOptions().shouldCollectStatistics())
+			this.getMetrics().recordSupergraphSize(supergraph.getNumberOfNodes());
+
+		this.checkGraph(supergraph);
+		TypeStateProblem problem = this.createTypeStateProblem(supergraph, instances);
+
+		BudgetedProgressMonitor monitor = this.budgetedProgressMonitorFactory.apply(budget);
+		TabulationSolver<BasicBlockInContext<IExplodedBasicBlock>, CGNode, Factoid> solver = new TabulationSolver<BasicBlockInContext<IExplodedBasicBlock>, CGNode, Factoid>(
+				problem, monitor) {
+		};
+
+		TabulationResult<BasicBlockInContext<IExplodedBasicBlock>, CGNode, Factoid> result;
+		try {
+			result = solver.solve();
+		} catch (TabulationCancelException e) {
+			if (!monitor.isBudgetExceeded())
+				throw e;
+
+			this.skipInstancesOverBudget(instances);
+
+			@SuppressWarnings("unchecked")
+			TabulationResult<BasicBlockInContext<IExplodedBasicBlock>, CGNode, Factoid> partialResult = e
+					.getResult();
+			result = partialResult;
+		}
+
+		return new TypeStateResult(result, this.getDomain(), supergraph);
+	}
+}
@@ -0,0 +1,278 @@
+package edu.cuny.hunter.streamrefactoring.core.wala;
+
+import static edu.cuny.hunter.streamrefactoring.core.utils.LoggerNames.LOGGER_NAME;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.BaseStream;
+import java.util.stream.Stream;
+
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IWorkspaceRoot;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.jdt.core.IClasspathEntry;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.JavaModelException;
+
+import com.ibm.wala.ipa.callgraph.CallGraph;
+import com.ibm.wala.ipa.callgraph.propagation.InstanceKey;
+import com.ibm.wala.util.collections.Pair;
+
+/**
+ * A process-wide cache of {@link EclipseProjectAnalysisEngine}s, including
+ * their {@link CallGraph}s, pointer analyses, and heap graphs. Engines are
+ * keyed by a hash of the project's source and class files, its classpath, and
+ * the N to use for instances of {@link BaseStream}. At most one engine is retained per
+ * project; a stale engine is evicted as soon as its key no longer matches.
+ *
+ * @apiNote The WALA call graph and pointer analysis aren't serializable. As
+ *          such, engines are only retained for the lifetime of the current
+ *          process.
+ */
+public final class AnalysisEngineCache {
+
+	private static final String DIGEST_ALGORITHM = "SHA-256";
+
+	private static final Logger LOGGER = Logger.getLogger(LOGGER_NAME);
+
+	private static Map<IJavaProject, Pair<String, EclipseProjectAnalysisEngine<InstanceKey>>> projectToKeyedEngineMap = new HashMap<>();
+
+	public static synchronized void clear() {
+		projectToKeyedEngineMap.clear();
+	}
+
+	/**
+	 * Computes the key under which an {@link EclipseProjectAnalysisEngine} for the
+	 * given project would be cached.
+	 *
+	 * @param project
+	 *            The project whose key to compute.
+	 * @param nToUseForStreams
+	 *            The N to use for instances of {@link BaseStream}.
+	 * @param useStreamLibrarySummaries
+	 *            Whether the stream library is summarized.
+	 * @return A hash of the given project's source and class files, its
+	 *         classpath, and the given call graph options.
+	 */
+	public static String computeKey(IJavaProject project, int nToUseForStreams, boolean useStreamLibrarySummaries)
+			throws JavaModelException, IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("Can't find digest algorithm: " + DIGEST_ALGORITHM + ".", e);
+		}
+
+		update(digest, "N=" + nToUseForStreams);
+		update(digest, "summaries=" + useStreamLibrarySummaries);
+
+		IWorkspaceRoot root = project.getProject().getWorkspace().getRoot();
+
+		// the project's default output location.
+		update(digest, root, project.getOutputLocation());
+
+		for (IClasspathEntry entry : project.getResolvedClasspath(true)) {
+			update(digest, entry.getEntryKind() + ":" + entry.getPath());
+
+			switch (entry.getEntryKind()) {
+			case IClasspathEntry.CPE_SOURCE:
+				// the engine analyzes the sources, which may not have been built yet.
+				updateSources(digest, root, entry.getPath());
+
+				// source folders may have their own output locations.
+				if (entry.getOutputLocation() != null)
+					update(digest, root, entry.getOutputLocation());
+				break;
+			case IClasspathEntry.CPE_LIBRARY:
+				update(digest, root, entry.getPath());
+				break;
+			case IClasspathEntry.CPE_PROJECT:
+				IJavaProject requiredProject = JavaCore.create(root.getProject(entry.getPath().lastSegment()));
+
+				if (requiredProject.exists()) {
+					update(digest, root, requiredProject.getOutputLocation());
+
+					for (IClasspathEntry requiredEntry : requiredProject.getRawClasspath())
+						if (requiredEntry.getEntryKind() == IClasspathEntry.CPE_SOURCE)
+							updateSources(digest, root, requiredEntry.getPath());
+				}
+				break;
+			default:
+				break;
+			}
+		}
+
+		StringBuilder builder = new StringBuilder();
+
+		for (byte b : digest.digest())
+			builder.append(String.format("%02x", b));
+
+		String ret = builder.toString();
+		LOGGER.fine(() -> "Analysis engine key for: " + project.getElementName() + " is: " + ret + ".");
+		return ret;
+	}
+
+	/**
+	 * Returns the cached {@link EclipseProjectAnalysisEngine} for the given
+	 * project regardless of the hash of its source and class files and classpath,
+	 * provided it was created using the given call graph options. Should only be used when
+	 * stale engines are otherwise invalidated, e.g., by an
+	 * {@link AnalysisEngineCacheInvalidator}.
+	 *
+	 * @param project
+	 *            The project whose engine to retrieve.
+	 * @param nToUseForStreams
+	 *            The N to use for instances of {@link BaseStream}.
+	 * @param useStreamLibrarySummaries
+	 *            Whether the stream library is summarized.
+	 * @return The cached engine or {@link Optional#empty()} if none exists or the
+	 *         cached one was created using other options.
+	 */
+	public static synchronized Optional<EclipseProjectAnalysisEngine<InstanceKey>> get(IJavaProject project,
+			int nToUseForStreams, boolean useStreamLibrarySummaries) {
+		Pair<String, EclipseProjectAnalysisEngine<InstanceKey>> keyedEngine = projectToKeyedEngineMap.get(project);
+
+		if (keyedEngine == null)
+			return Optional.empty();
+
+		EclipseProjectAnalysisEngine<InstanceKey> engine = keyedEngine.snd;
+
+		if (engine.getNToUseForStreams() != nToUseForStreams
+				|| engine.shouldUseStreamLibrarySummaries() != useStreamLibrarySummaries) {
+			LOGGER.info(() -> "Evicting analysis engine with other options for: " + project.getElementName() + ".");
+			projectToKeyedEngineMap.remove(project);
+			return Optional.empty();
+		}
+
+		return Optional.of(engine);
+	}
+
+	/**
+	 * Returns the cached {@link EclipseProjectAnalysisEngine} for the given
+	 * project if it was cached under the given key.
+	 *
+	 * @param project
+	 *            The project whose engine to retrieve.
+	 * @param key
+	 *            The current key of the project.
+	 * @return The cached engine or {@link Optional#empty()} if none exists or the
+	 *         cached one is stale.
+	 * @see #computeKey(IJavaProject, int, boolean)
+	 */
+	public static synchronized Optional<EclipseProjectAnalysisEngine<InstanceKey>> get(IJavaProject project,
+			String key) {
+		Pair<String, EclipseProjectAnalysisEngine<InstanceKey>> keyedEngine = projectToKeyedEngineMap.get(project);
+
+		if (keyedEngine == null)
+			return Optional.empty();
+		else if (!keyedEngine.fst.equals(key)) {
+			LOGGER.info(() -> "Evicting stale analysis engine for: " + project.getElementName() + ".");
+			projectToKeyedEngineMap.remove(project);
+			return Optional.empty();
+		} else
+			return Optional.of(keyedEngine.snd);
+	}
+
+	/**
+	 * Removes the cached {@link EclipseProjectAnalysisEngine} of the given
+	 * project along with those of any cached projects that (transitively) require
+	 * it.
+	 *
+	 * @param project
+	 *            The project that changed.
+	 */
+	public static synchronized void invalidate(IJavaProject project) {
+		Set<String> invalidatedProjectNames = new HashSet<>();
+		invalidatedProjectNames.add(project.getElementName());
+		remove(project);
+
+		boolean changed;
+		do {
+			changed = false;
+
+			for (Iterator<IJavaProject> it = projectToKeyedEngineMap.keySet().iterator(); it.hasNext();) {
+				IJavaProject cachedProject = it.next();
+				boolean requiresInvalidatedProject;
+
+				try {
+					requiresInvalidatedProject = Arrays.stream(cachedProject.getRequiredProjectNames())
+							.anyMatch(invalidatedProjectNames::contains);
+				} catch (JavaModelException e) {
+					LOGGER.log(Level.WARNING, "Can't find required projects of: " + cachedProject.getElementName()
+							+ ". Invalidating its analysis engine.", e);
+					requiresInvalidatedProject = true;
+				}
+
+				if (requiresInvalidatedProject) {
+					LOGGER.info(() -> "Invalidating analysis engine for: " + cachedProject.getElementName() + ".");
+					invalidatedProjectNames.add(cachedProject.getElementName());
+					it.remove();
+					changed = true;
+				}
+			}
+		} while (changed);
+	}
+
+	public static synchronized void put(IJavaProject project, String key,
+			EclipseProjectAnalysisEngine<InstanceKey> engine) {
+		projectToKeyedEngineMap.put(project, Pair.make(key, engine));
+	}
+
+	public static synchronized void remove(IJavaProject project) {
+		if (projectToKeyedEngineMap.remove(project) != null)
+			LOGGER.info(() -> "Invalidating analysis engine for: " + project.getElementName() + ".");
+	}
+
+	private static void update(MessageDigest digest, IWorkspaceRoot root, IPath path) throws IOException {
+		update(digest, root, path, p -> true);
+	}
+
+	private static void update(MessageDigest digest, IWorkspaceRoot root, IPath path, Predicate<Path> filter)
+			throws IOException {
+		IResource resource = root.findMember(path);
+		File file = resource == null || resource.getLocation() == null ? path.toFile()
+				: resource.getLocation().toFile();
+
+		if (!file.exists())
+			return;
+
+		try (Stream<Path> paths = Files.walk(file.toPath())) {
+			for (Iterator<Path> it = paths.filter(Files::isRegularFile).filter(filter).sorted().iterator(); it.hasNext();) {
+				File regularFile = it.next().toFile();
+				update(digest, regularFile + ":" + regularFile.length() + ":" + regularFile.lastModified());
+			}
+		}
+	}
+
+	private static void update(MessageDigest digest, String value) {
+		digest.update(value.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Updates the given digest with the path, length, and modification time of
+	 * each Java source file under the given source folder.
+	 */
+	private static void updateSources(MessageDigest digest, IWorkspaceRoot root, IPath sourceFolder)
+			throws IOException {
+		update(digest, root, sourceFolder, p -> p.getFileName().toString().endsWith(".java"));
+	}
+
+	private AnalysisEngineCache() {
+	}
+}
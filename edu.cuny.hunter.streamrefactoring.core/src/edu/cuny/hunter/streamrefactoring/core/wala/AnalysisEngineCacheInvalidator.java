@@ -0,0 +1,126 @@
+package edu.cuny.hunter.streamrefactoring.core.wala;
+
+import static edu.cuny.hunter.streamrefactoring.core.utils.LoggerNames.LOGGER_NAME;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import org.eclipse.jdt.core.ElementChangedEvent;
+import org.eclipse.jdt.core.IElementChangedListener;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaElementDelta;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.JavaCore;
+
+/**
+ * Listens to Java element deltas and invalidates the cached
+ * {@link EclipseProjectAnalysisEngine}s of projects whose compilation units,
+ * class files, libraries, or classpaths have changed, along with those of the
+ * projects that require them.
+ *
+ * @see AnalysisEngineCache
+ */
+public final class AnalysisEngineCacheInvalidator implements IElementChangedListener {
+
+	private static AnalysisEngineCacheInvalidator installedInvalidator;
+
+	private static final Logger LOGGER = Logger.getLogger(LOGGER_NAME);
+
+	/**
+	 * The flags of a compilation unit or class file delta denoting that its
+	 * contents changed.
+	 */
+	private static final int CONTENT_CHANGE_FLAGS = IJavaElementDelta.F_CONTENT
+			| IJavaElementDelta.F_PRIMARY_RESOURCE;
+
+	/**
+	 * The flags of a package fragment root delta denoting that the classes it
+	 * contributes changed.
+	 */
+	private static final int PACKAGE_FRAGMENT_ROOT_CHANGE_FLAGS = IJavaElementDelta.F_ARCHIVE_CONTENT_CHANGED
+			| IJavaElementDelta.F_ADDED_TO_CLASSPATH | IJavaElementDelta.F_REMOVED_FROM_CLASSPATH;
+
+	/**
+	 * The flags of a project delta denoting that its classpath or state changed.
+	 */
+	private static final int PROJECT_CHANGE_FLAGS = IJavaElementDelta.F_CLASSPATH_CHANGED
+			| IJavaElementDelta.F_RESOLVED_CLASSPATH_CHANGED | IJavaElementDelta.F_OPENED
+			| IJavaElementDelta.F_CLOSED;
+
+	private static void collectChangedProjects(IJavaElementDelta delta, Set<IJavaProject> changedProjects) {
+		IJavaElement element = delta.getElement();
+		IJavaProject project = element.getJavaProject();
+
+		// no need to look further if we've already found a change in this project.
+		if (project != null && changedProjects.contains(project))
+			return;
+
+		boolean addedOrRemoved = delta.getKind() == IJavaElementDelta.ADDED
+				|| delta.getKind() == IJavaElementDelta.REMOVED;
+
+		switch (element.getElementType()) {
+		case IJavaElement.JAVA_PROJECT:
+			if (addedOrRemoved || (delta.getFlags() & PROJECT_CHANGE_FLAGS) != 0) {
+				changedProjects.add(project);
+				return;
+			}
+			break;
+		case IJavaElement.PACKAGE_FRAGMENT_ROOT:
+			if (addedOrRemoved || (delta.getFlags() & PACKAGE_FRAGMENT_ROOT_CHANGE_FLAGS) != 0) {
+				changedProjects.add(project);
+				return;
+			}
+			break;
+		case IJavaElement.COMPILATION_UNIT:
+		case IJavaElement.CLASS_FILE:
+			if (addedOrRemoved || (delta.getFlags() & CONTENT_CHANGE_FLAGS) != 0)
+				changedProjects.add(project);
+			// no need to descend into the unit's members.
+			return;
+		default:
+			break;
+		}
+
+		for (IJavaElementDelta affectedChild : delta.getAffectedChildren())
+			collectChangedProjects(affectedChild, changedProjects);
+	}
+
+	/**
+	 * Start invalidating cached {@link EclipseProjectAnalysisEngine}s upon
+	 * changes to the Java model. Has no effect if already installed.
+	 */
+	public static synchronized void install() {
+		if (installedInvalidator == null) {
+			installedInvalidator = new AnalysisEngineCacheInvalidator();
+			JavaCore.addElementChangedListener(installedInvalidator, ElementChangedEvent.POST_CHANGE);
+			LOGGER.info("Installed analysis engine cache invalidator.");
+		}
+	}
+
+	public static synchronized boolean isInstalled() {
+		return installedInvalidator != null;
+	}
+
+	public static synchronized void uninstall() {
+		if (installedInvalidator != null) {
+			JavaCore.removeElementChangedListener(installedInvalidator);
+			installedInvalidator = null;
+			LOGGER.info("Uninstalled analysis engine cache invalidator.");
+		}
+	}
+
+	private AnalysisEngineCacheInvalidator() {
+	}
+
+	@Override
+	public void elementChanged(ElementChangedEvent event) {
+		Set<IJavaProject> changedProjects = new HashSet<>();
+		collectChangedProjects(event.getDelta(), changedProjects);
+
+		for (IJavaProject project : changedProjects) {
+			LOGGER.fine(() -> "Detected change in project: " + project.getElementName() + ".");
+			AnalysisEngineCache.invalidate(project);
+		}
+	}
+}
@@ -0,0 +1,159 @@
+package edu.cuny.hunter.streamrefactoring.core.wala;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import com.ibm.wala.util.MonitorUtil.IProgressMonitor;
+
+/**
+ * An {@link IProgressMonitor} that additionally reports being canceled once
+ * the time elapsed since its creation or the heap in use exceeds a budget.
+ * Used to bound call graph construction, whose solver polls its monitor.
+ *
+ * The heap in use is only measured at the first poll following a garbage
+ * collection, so that garbage, e.g., that of a previously discarded call graph,
+ * isn't mistaken for live data. As such, the heap budget can't be exceeded
+ * before a garbage collection has run since the monitor's creation.
+ */
+public class BudgetedProgressMonitor implements IProgressMonitor {
+
+	private static final List<GarbageCollectorMXBean> GARBAGE_COLLECTORS = ManagementFactory
+			.getGarbageCollectorMXBeans();
+
+	/**
+	 * The number of garbage collections as of the last heap measurement or the
+	 * monitor's creation.
+	 */
+	private long collectionCount;
+
+	private IProgressMonitor delegate;
+
+	/**
+	 * The time in milliseconds, since the epoch, after which the budget is
+	 * exceeded. {@link Long#MAX_VALUE} if time isn't budgeted.
+	 */
+	private long deadline;
+
+	/**
+	 * The used heap, in bytes, after which the budget is exceeded.
+	 * {@link Long#MAX_VALUE} if the heap isn't budgeted.
+	 */
+	private long heapBudget;
+
+	/**
+	 * Why the budget was exceeded or null if it wasn't.
+	 */
+	private String exceededMessage;
+
+	/**
+	 * Create a new {@link BudgetedProgressMonitor}.
+	 *
+	 * @param delegate
+	 *            The monitor to delegate to. May be null.
+	 * @param timeBudget
+	 *            The time budget in milliseconds or zero for none.
+	 * @param heapBudget
+	 *            The heap budget in bytes or zero for none.
+	 */
+	public BudgetedProgressMonitor(IProgressMonitor delegate, long timeBudget, long heapBudget) {
+		this.delegate = delegate;
+		this.deadline = timeBudget > 0 ? System.currentTimeMillis() + timeBudget : Long.MAX_VALUE;
+		this.heapBudget = heapBudget > 0 ? heapBudget : Long.MAX_VALUE;
+		this.collectionCount = this.getCollectionCount();
+	}
+
+	@Override
+	public void beginTask(String task, int totalWork) {
+		if (this.delegate != null)
+			this.delegate.beginTask(task, totalWork);
+	}
+
+	@Override
+	public void cancel() {
+		if (this.delegate != null)
+			this.delegate.cancel();
+	}
+
+	@Override
+	public void done() {
+		if (this.delegate != null)
+			this.delegate.done();
+	}
+
+	/**
+	 * Returns the total number of garbage collections that have run so far.
+	 *
+	 * @return The number of garbage collections.
+	 */
+	protected long getCollectionCount() {
+		long ret = 0;
+
+		for (GarbageCollectorMXBean collector : GARBAGE_COLLECTORS)
+			// -1 if undefined.
+			ret += Math.max(0, collector.getCollectionCount());
+
+		return ret;
+	}
+
+	@Override
+	public String getCancelMessage() {
+		if (this.exceededMessage != null)
+			return this.exceededMessage;
+		return this.delegate == null ? null : this.delegate.getCancelMessage();
+	}
+
+	@Override
+	public boolean isCanceled() {
+		return this.delegate != null && this.delegate.isCanceled() || this.isBudgetExceeded();
+	}
+
+	/**
+	 * Returns true iff the time or heap budget has been exceeded. Once exceeded,
+	 * remains so. The heap budget isn't exceeded until garbage has been collected
+	 * since this monitor's creation.
+	 *
+	 * @return True iff the budget has been exceeded.
+	 */
+	public boolean isBudgetExceeded() {
+		if (this.exceededMessage == null)
+			if (System.currentTimeMillis() > this.deadline)
+				this.exceededMessage = "Time budget exceeded.";
+			else if (this.heapBudget < Long.MAX_VALUE) {
+				long collectionCount = this.getCollectionCount();
+
+				// measure only once garbage has been collected since the last time.
+				if (collectionCount > this.collectionCount) {
+					this.collectionCount = collectionCount;
+					long usedHeap = this.getUsedHeap();
+
+					if (usedHeap > this.heapBudget)
+						this.exceededMessage = "Heap budget exceeded: " + usedHeap + " bytes in use.";
+				}
+			}
+
+		return this.exceededMessage != null;
+	}
+
+	/**
+	 * Returns the heap currently in use.
+	 *
+	 * @return The used heap in bytes.
+	 */
+	protected long getUsedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	@Override
+	public void subTask(String subTask) {
+		if (this.delegate != null)
+			this.delegate.subTask(subTask);
+	}
+
+	@Override
+	public void worked(int units) {
+		if (this.delegate != null)
+			this.delegate.worked(units);
+	}
+}
@@ -0,0 +1,19 @@
+package edu.cuny.hunter.streamrefactoring.core.wala;
+
+import com.ibm.wala.util.CancelException;
+
+/**
+ * Thrown when a call graph can't be built within its time or heap budget, even
+ * using the fallback policy.
+ */
+public class CallGraphBudgetExceededException extends CancelException {
+
+	/**
+	 *
+	 */
+	private static final long serialVersionUID = 1L;
+
+	public CallGraphBudgetExceededException(String message) {
+		super(message);
+	}
+}
@@ -1,5 +1,6 @@
 package edu.cuny.hunter.streamrefactoring.core.wala;
 
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -7,24 +8,70 @@ import com.ibm.wala.classLoader.CallSiteReference;
 import com.ibm.wala.classLoader.IMethod;
 import com.ibm.wala.ipa.callgraph.propagation.InstanceKey;
 import com.ibm.wala.ipa.callgraph.propagation.cfa.CallString;
+import com.ibm.wala.util.intset.MutableIntSet;
+import com.ibm.wala.util.intset.MutableSparseIntSet;
+import com.ibm.wala.util.intset.OrdinalSetMapping;
 
 public class CallStringWithReceivers extends CallString {
 
-	private Set<InstanceKey> possibleReceivers = new HashSet<>();
+	/**
+	 * The indices of the possible receivers in {@link #receiverMapping}. Sparse
+	 * as most call strings have only a few receivers.
+	 */
+	private MutableIntSet possibleReceiverIndices = MutableSparseIntSet.makeEmpty();
 
-	public CallStringWithReceivers(CallSiteReference site, IMethod method) {
+	/**
+	 * The mapping of receivers to indices, shared among call strings. Accesses
+	 * are synchronized on it.
+	 */
+	private OrdinalSetMapping<InstanceKey> receiverMapping;
+
+	public CallStringWithReceivers(CallSiteReference site, IMethod method,
+			OrdinalSetMapping<InstanceKey> receiverMapping) {
 		super(site, method);
+		this.receiverMapping = receiverMapping;
 	}
 
-	public CallStringWithReceivers(CallSiteReference site, IMethod method, int length, CallString callString) {
+	public CallStringWithReceivers(CallSiteReference site, IMethod method, int length, CallString callString,
+			OrdinalSetMapping<InstanceKey> receiverMapping) {
 		super(site, method, length, callString);
+		this.receiverMapping = receiverMapping;
 	}
 
 	public void addPossibleReceiver(InstanceKey receiver) {
-		this.getPossibleReceivers().add(receiver);
+		int index;
+
+		synchronized (this.receiverMapping) {
+			index = this.receiverMapping.getMappedIndex(receiver);
+
+			if (index < 0)
+				index = this.receiverMapping.add(receiver);
+		}
+
+		synchronized (this) {
+			this.possibleReceiverIndices.add(index);
+		}
 	}
 
+	public void addPossibleReceivers(Collection<? extends InstanceKey> receivers) {
+		receivers.forEach(this::addPossibleReceiver);
+	}
+
+	/**
+	 * Returns the possible receivers of this call string.
+	 *
+	 * @return A snapshot of the possible receivers. Modifying it doesn't affect
+	 *         this call string.
+	 */
 	public Set<InstanceKey> getPossibleReceivers() {
-		return this.possibleReceivers;
+		Set<InstanceKey> ret = new HashSet<>();
+
+		synchronized (this) {
+			synchronized (this.receiverMapping) {
+				this.possibleReceiverIndices.foreach(i -> ret.add(this.receiverMapping.getMappedObject(i)));
+			}
+		}
+
+		return ret;
 	}
-}
\ No newline at end of file
+}
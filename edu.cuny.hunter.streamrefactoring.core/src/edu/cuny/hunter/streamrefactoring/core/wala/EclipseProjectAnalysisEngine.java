@@ -11,9 +11,20 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.jar.JarFile;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.BaseStream;
+import java.util.stream.Collectors;
 
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
@@ -23,22 +34,38 @@ import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.jdt.launching.IVMInstall;
 import org.eclipse.jdt.launching.JavaRuntime;
 
+import com.ibm.wala.analysis.pointers.BasicHeapGraph;
+import com.ibm.wala.analysis.pointers.HeapGraph;
 import com.ibm.wala.cast.java.client.JDTJavaSourceAnalysisEngine;
+import com.ibm.wala.classLoader.ClassLoaderFactory;
+import com.ibm.wala.classLoader.IClassLoader;
+import com.ibm.wala.classLoader.IMethod;
 import com.ibm.wala.ide.util.EclipseProjectPath;
 import com.ibm.wala.ide.util.ProgressMonitorDelegate;
 import com.ibm.wala.ipa.callgraph.AnalysisCache;
 import com.ibm.wala.ipa.callgraph.AnalysisOptions;
+import com.ibm.wala.ipa.callgraph.CGNode;
 import com.ibm.wala.ipa.callgraph.CallGraph;
 import com.ibm.wala.ipa.callgraph.CallGraphBuilder;
 import com.ibm.wala.ipa.callgraph.CallGraphBuilderCancelException;
 import com.ibm.wala.ipa.callgraph.Entrypoint;
 import com.ibm.wala.ipa.callgraph.IAnalysisCacheView;
 import com.ibm.wala.ipa.callgraph.propagation.InstanceKey;
+import com.ibm.wala.ipa.callgraph.propagation.PointerAnalysis;
+import com.ibm.wala.ipa.callgraph.propagation.PointerKey;
+import com.ibm.wala.ipa.callgraph.propagation.SSAPropagationCallGraphBuilder;
 import com.ibm.wala.ipa.callgraph.propagation.cfa.nCFABuilder;
+import com.ibm.wala.ipa.callgraph.pruned.PrunedCallGraph;
 import com.ibm.wala.ipa.cha.IClassHierarchy;
+import com.ibm.wala.ipa.modref.ModRef;
 import com.ibm.wala.types.ClassLoaderReference;
+import com.ibm.wala.types.MethodReference;
 import com.ibm.wala.util.CancelException;
+import com.ibm.wala.util.collections.Pair;
 import com.ibm.wala.util.config.FileOfClasses;
+import com.ibm.wala.util.config.SetOfClasses;
+import com.ibm.wala.util.graph.traverse.DFS;
+import com.ibm.wala.util.intset.OrdinalSet;
 
 /**
  * Modified from EclipseAnalysisEngine.java, originally from Keshmesh. Authored
@@ -61,8 +88,71 @@ public class EclipseProjectAnalysisEngine<I extends InstanceKey> extends JDTJava
 	 */
 	private static final int N_FOR_STREAMS_DEFAULT = 2;
 
+	/**
+	 * The N value used for instances of {@link BaseStream} by the fallback policy,
+	 * i.e., when the call graph can't be built within its budget.
+	 */
+	private static final int N_FOR_STREAMS_FALLBACK = 1;
+
 	private CallGraphBuilder<?> callGraphBuilder;
 
+	/**
+	 * The heap, in bytes, that may be in use while building the call graph. Zero
+	 * for no budget.
+	 */
+	private long callGraphHeapBudget;
+
+	/**
+	 * The time, in milliseconds, that building the call graph may take. Zero for
+	 * no budget.
+	 */
+	private long callGraphTimeBudget;
+
+	/**
+	 * Map from call sites, identified by their enclosing method and program
+	 * counter, to the N to use for instances of {@link BaseStream} created
+	 * (transitively) from them.
+	 */
+	private Map<Pair<MethodReference, Integer>, Integer> callSiteToNToUseForStreams = new HashMap<>();
+
+	/**
+	 * The {@link Entrypoint}s used to build the current {@link CallGraph}.
+	 */
+	private Set<Entrypoint> callGraphEntryPoints = Collections.emptySet();
+
+	/**
+	 * The {@link HeapGraph} of {@link #heapGraphPointerAnalysis}.
+	 */
+	private HeapGraph<I> heapGraph;
+
+	/**
+	 * The {@link PointerAnalysis} from which {@link #heapGraph} was computed.
+	 */
+	private PointerAnalysis<I> heapGraphPointerAnalysis;
+
+	/**
+	 * Other projects whose analysis scopes are merged into that of
+	 * {@link #project}.
+	 */
+	private List<IJavaProject> mergedProjects = Collections.emptyList();
+
+	/**
+	 * Memoizes whether the call graph nodes of each method are "stream nodes."
+	 * Kept across call graphs as it only depends on the class hierarchy.
+	 */
+	private Map<IMethod, Boolean> methodToStreamNodeMap = new ConcurrentHashMap<>();
+
+	/**
+	 * The {@link CallGraph} whose nodes are memoized in {@link #nodeToModMap}.
+	 */
+	private CallGraph modCallGraph;
+
+	/**
+	 * Memoizes the locations that each call graph node of {@link #modCallGraph},
+	 * including its callees, may modify.
+	 */
+	private Map<CGNode, OrdinalSet<PointerKey>> nodeToModMap = new HashMap<>();
+
 	/**
 	 * The N to use for instances of {@link BaseStream}.
 	 */
@@ -73,6 +163,25 @@ public class EclipseProjectAnalysisEngine<I extends InstanceKey> extends JDTJava
 	 */
 	private IJavaProject project;
 
+	/**
+	 * The primordial loaders shared with the other engines of the analysis run
+	 * using the same JRE or null if the primordial part of the class hierarchy
+	 * shouldn't be shared.
+	 */
+	private Map<String, IClassLoader> sharedPrimordialClassLoaders;
+
+	/**
+	 * True iff the {@link java.util.stream} pipeline implementation should be
+	 * bypassed using summaries of its operations when building the call graph.
+	 */
+	private boolean useStreamLibrarySummaries;
+
+	/**
+	 * True iff the current call graph was built using the fallback policy because
+	 * the original policy exceeded the call graph budget.
+	 */
+	private boolean usingFallbackPolicy;
+
 	public EclipseProjectAnalysisEngine(IJavaProject project) throws IOException, CoreException {
 		super(project);
 		this.project = project;
@@ -100,7 +209,23 @@ public class EclipseProjectAnalysisEngine<I extends InstanceKey> extends JDTJava
 			e.printStackTrace();
 			throw new RuntimeException(e);
 		}
-		this.scope = this.ePath.toAnalysisScope(this.makeAnalysisScope());
+
+		if (this.mergedProjects.isEmpty())
+			this.scope = this.ePath.toAnalysisScope(this.makeAnalysisScope());
+		else {
+			Collection<EclipseProjectPath<?, IJavaProject>> projectPaths = new ArrayList<>();
+			projectPaths.add(this.ePath);
+
+			for (IJavaProject mergedProject : this.mergedProjects)
+				try {
+					projectPaths.add(this.createProjectPath(mergedProject));
+				} catch (CoreException e) {
+					LOGGER.log(Level.SEVERE, "Can't create project path for: " + mergedProject.getElementName(), e);
+					throw new RuntimeException(e);
+				}
+
+			this.scope = Util.mergeProjectPaths(projectPaths, this.makeAnalysisScope());
+		}
 
 		// if no primordial classes are in scope.
 		if (this.scope.getModules(ClassLoaderReference.Primordial).isEmpty()) {
@@ -137,23 +262,86 @@ public class EclipseProjectAnalysisEngine<I extends InstanceKey> extends JDTJava
 	public IClassHierarchy buildClassHierarchy() {
 		IClassHierarchy classHierarchy = super.buildClassHierarchy();
 		this.setClassHierarchy(classHierarchy);
+
+		// the methods are those of the previous class hierarchy.
+		this.methodToStreamNodeMap.clear();
 		return classHierarchy;
 	}
 
+	/**
+	 * Builds the call graph. If a call graph budget is set and exceeded, the
+	 * call graph is rebuilt using the fallback policy, i.e., with the N for
+	 * instances of {@link BaseStream} lowered to {@value #N_FOR_STREAMS_FALLBACK}.
+	 *
+	 * @param options
+	 *            The options to build the call graph with.
+	 * @param monitor
+	 *            To report progress and check for cancellation.
+	 * @return The call graph.
+	 * @throws CallGraphBudgetExceededException
+	 *             If the call graph can't be built within budget even using the
+	 *             fallback policy.
+	 * @see #setCallGraphHeapBudget(long)
+	 * @see #setCallGraphTimeBudget(long)
+	 * @see #isUsingFallbackPolicy()
+	 */
 	public CallGraph buildSafeCallGraph(AnalysisOptions options, IProgressMonitor monitor)
 			throws CallGraphBuilderCancelException, CancelException {
 		SubMonitor subMonitor = SubMonitor.convert(monitor, "Building call graph...", 1);
+		com.ibm.wala.util.MonitorUtil.IProgressMonitor delegate = ProgressMonitorDelegate
+				.createProgressMonitorDelegate(subMonitor.split(1));
+
+		if (this.getCallGraphTimeBudget() <= 0 && this.getCallGraphHeapBudget() <= 0)
+			return this.buildSafeCallGraph(options, delegate, null);
+
+		BudgetedProgressMonitor budgetedMonitor = this.createBudgetedProgressMonitor(delegate);
+		try {
+			return this.buildSafeCallGraph(options, budgetedMonitor, budgetedMonitor);
+		} catch (CallGraphBuilderCancelException e) {
+			if (!budgetedMonitor.isBudgetExceeded())
+				throw e;
+
+			if (this.getNToUseForStreams() <= N_FOR_STREAMS_FALLBACK && this.callSiteToNToUseForStreams.isEmpty())
+				throw new CallGraphBudgetExceededException("Can't build call graph for: "
+						+ this.getProject().getElementName() + ". " + budgetedMonitor.getCancelMessage());
+
+			LOGGER.warning(() -> "Call graph budget exceeded for: " + this.getProject().getElementName() + ". "
+					+ budgetedMonitor.getCancelMessage() + " Falling back to N = " + N_FOR_STREAMS_FALLBACK + ".");
+			this.useFallbackPolicy();
+		}
+
+		BudgetedProgressMonitor fallbackMonitor = this.createBudgetedProgressMonitor(delegate);
+		try {
+			return this.buildSafeCallGraph(options, fallbackMonitor, fallbackMonitor);
+		} catch (CallGraphBuilderCancelException e) {
+			if (fallbackMonitor.isBudgetExceeded())
+				throw new CallGraphBudgetExceededException("Can't build call graph for: "
+						+ this.getProject().getElementName() + " using the fallback policy. "
+						+ fallbackMonitor.getCancelMessage());
+			throw e;
+		}
+	}
+
+	private CallGraph buildSafeCallGraph(AnalysisOptions options,
+			com.ibm.wala.util.MonitorUtil.IProgressMonitor builderMonitor,
+			com.ibm.wala.util.MonitorUtil.IProgressMonitor callGraphMonitor)
+			throws CallGraphBuilderCancelException, CancelException {
 		LOGGER.entering(this.getClass().getName(), "buildSafeCallGraph", this.callGraphBuilder);
 
 		if (this.callGraphBuilder == null) {
 			LOGGER.info("Creating new call graph builder.");
-			this.callGraphBuilder = this.buildCallGraph(this.getClassHierarchy(), options, true,
-					ProgressMonitorDelegate.createProgressMonitorDelegate(subMonitor.split(1)));
+			this.callGraphBuilder = this.buildCallGraph(this.getClassHierarchy(), options, true, builderMonitor);
 		} else
 			LOGGER.info("Reusing call graph builder.");
 
 		LOGGER.exiting(this.getClass().getName(), "buildSafeCallGraph", this.callGraphBuilder);
-		return this.callGraphBuilder.makeCallGraph(options, null);
+		CallGraph callGraph = this.callGraphBuilder.makeCallGraph(options, callGraphMonitor);
+
+		Set<Entrypoint> entryPoints = new HashSet<>();
+		options.getEntrypoints().forEach(entryPoints::add);
+		this.callGraphEntryPoints = entryPoints;
+
+		return callGraph;
 	}
 
 	public CallGraph buildSafeCallGraph(Iterable<Entrypoint> entryPoints, IProgressMonitor monitor)
@@ -161,10 +349,61 @@ public class EclipseProjectAnalysisEngine<I extends InstanceKey> extends JDTJava
 		return this.buildSafeCallGraph(this.getDefaultOptions(entryPoints), monitor);
 	}
 
+	/**
+	 * Discards the N's set for individual call sites, along with the call graph
+	 * built using them, so that the next call graph is built using the N for all
+	 * instances of {@link BaseStream}. Does nothing if no such N's are set.
+	 *
+	 * @see #setNToUseForStreams(MethodReference, int, int)
+	 */
+	public void clearAdaptedNToUseForStreams() {
+		if (this.callSiteToNToUseForStreams.isEmpty())
+			return;
+
+		this.callSiteToNToUseForStreams.clear();
+		this.clearCallGraphBuilder();
+		this.cg = null;
+		this.pointerAnalysis = null;
+	}
+
 	public void clearCallGraphBuilder() {
 		this.callGraphBuilder = null;
 	}
 
+	/**
+	 * Creates the monitor bounding an attempt to build the call graph by the
+	 * call graph budget. A new monitor is created for each attempt.
+	 *
+	 * @param delegate
+	 *            The monitor to delegate to.
+	 * @return A {@link BudgetedProgressMonitor} using the call graph budget.
+	 */
+	protected BudgetedProgressMonitor createBudgetedProgressMonitor(
+			com.ibm.wala.util.MonitorUtil.IProgressMonitor delegate) {
+		return new BudgetedProgressMonitor(delegate, this.getCallGraphTimeBudget(), this.getCallGraphHeapBudget());
+	}
+
+	/**
+	 * Creates the monitor bounding the typestate analysis of this engine's
+	 * project, i.e., that of a rule or of a single instance, by the given time
+	 * budget.
+	 *
+	 * @param timeBudget
+	 *            The time budget in milliseconds.
+	 * @return A {@link BudgetedProgressMonitor} using the given time budget.
+	 */
+	public BudgetedProgressMonitor createTypestateBudgetedProgressMonitor(long timeBudget) {
+		return new BudgetedProgressMonitor(null, timeBudget, 0);
+	}
+
+	@Override
+	protected ClassLoaderFactory makeClassLoaderFactory(SetOfClasses exclusions) {
+		if (this.shouldSharePrimordialClassHierarchy())
+			return new SharedPrimordialClassLoaderFactory(exclusions, this.sharedPrimordialClassLoaders);
+		else
+			return super.makeClassLoaderFactory(exclusions);
+	}
+
 	@Override
 	protected EclipseProjectPath<?, IJavaProject> createProjectPath(IJavaProject project)
 			throws IOException, CoreException {
@@ -177,21 +416,128 @@ public class EclipseProjectAnalysisEngine<I extends InstanceKey> extends JDTJava
 		return super.getCallGraph();
 	}
 
+	/**
+	 * Get the {@link Entrypoint}s used to build the current {@link CallGraph}.
+	 *
+	 * @return The {@link Entrypoint}s used to build the current {@link CallGraph}
+	 *         or an empty collection if it hasn't been built yet.
+	 */
+	public Collection<Entrypoint> getCallGraphEntryPoints() {
+		return Collections.unmodifiableSet(this.callGraphEntryPoints);
+	}
+
 	public CallGraphBuilder<?> getCallGraphBuilder() {
 		return this.callGraphBuilder;
 	}
 
+	public long getCallGraphHeapBudget() {
+		return this.callGraphHeapBudget;
+	}
+
+	public long getCallGraphTimeBudget() {
+		return this.callGraphTimeBudget;
+	}
+
+	/**
+	 * {@inheritDoc} Unlike the super class, the heap graph is recomputed if the
+	 * call graph, and thus the pointer analysis, has been rebuilt since.
+	 */
+	@Override
+	public HeapGraph<I> getHeapGraph() {
+		if (this.heapGraph == null || this.heapGraphPointerAnalysis != this.getPointerAnalysis()) {
+			this.heapGraphPointerAnalysis = this.getPointerAnalysis();
+			this.heapGraph = new BasicHeapGraph<>(this.heapGraphPointerAnalysis, this.getCallGraph());
+		}
+		return this.heapGraph;
+	}
+
 	@Override
 	protected CallGraphBuilder<?> getCallGraphBuilder(IClassHierarchy cha, AnalysisOptions options,
 			IAnalysisCacheView cache) {
 		LOGGER.fine(() -> "Using N = " + this.getNToUseForStreams() + ".");
-		return Util.makeNCFABuilder(N, options, (AnalysisCache) cache, cha, this.scope, this.getNToUseForStreams());
+		SSAPropagationCallGraphBuilder builder = Util.makeNCFABuilder(N, options, (AnalysisCache) cache, cha,
+				this.scope, this.getNToUseForStreams(), this.shouldUseStreamLibrarySummaries());
+
+		nCFAContextWithReceiversSelector contextSelector = (nCFAContextWithReceiversSelector) builder
+				.getContextSelector();
+
+		this.callSiteToNToUseForStreams.forEach((callSite, n) -> {
+			LOGGER.fine(() -> "Using N = " + n + " for call site: " + callSite + ".");
+			contextSelector.setContextLengthForStreams(callSite.fst, callSite.snd, n);
+		});
+
+		return builder;
+	}
+
+	/**
+	 * Returns whether the call graph nodes of each method are "stream nodes."
+	 *
+	 * @return A modifiable, thread-safe map from methods to whether their nodes
+	 *         are stream nodes.
+	 */
+	public Map<IMethod, Boolean> getMethodToStreamNodeMap() {
+		return this.methodToStreamNodeMap;
+	}
+
+	/**
+	 * Returns the locations that each of the given call graph nodes, including
+	 * its callees, may modify. Mod sets are only computed for the nodes reachable
+	 * from the given nodes whose mod sets aren't memoized yet. They remain
+	 * memoized until the call graph is rebuilt.
+	 *
+	 * @param nodes
+	 *            Nodes of the current call graph.
+	 * @return A map from each of the given nodes to its mod set.
+	 */
+	public synchronized Map<CGNode, OrdinalSet<PointerKey>> getMod(Collection<CGNode> nodes) {
+		CallGraph callGraph = this.getCallGraph();
+
+		if (this.modCallGraph != callGraph) {
+			this.nodeToModMap.clear();
+			this.modCallGraph = callGraph;
+		}
+
+		Set<CGNode> nodesToCompute = nodes.stream().filter(n -> !this.nodeToModMap.containsKey(n))
+				.collect(Collectors.toSet());
+
+		if (!nodesToCompute.isEmpty()) {
+			// the mod sets of these nodes include those of their callees.
+			Set<CGNode> reachableNodes = DFS.getReachableNodes(callGraph, nodesToCompute);
+			LOGGER.fine(() -> "Computing mod sets for: " + reachableNodes.size() + " of "
+					+ callGraph.getNumberOfNodes() + " nodes.");
+
+			ModRef<I> modRef = ModRef.make();
+			CallGraph prunedCallGraph = new PrunedCallGraph(callGraph, reachableNodes);
+			this.nodeToModMap.putAll(modRef.computeMod(prunedCallGraph, this.getPointerAnalysis()));
+		}
+
+		Map<CGNode, OrdinalSet<PointerKey>> ret = new HashMap<>(nodes.size());
+
+		for (CGNode node : nodes)
+			ret.put(node, this.nodeToModMap.get(node));
+
+		return ret;
 	}
 
 	public int getNToUseForStreams() {
 		return this.nToUseForStreams;
 	}
 
+	/**
+	 * Get the N to use for instances of {@link BaseStream} created (transitively)
+	 * from the given call site.
+	 *
+	 * @param enclosingMethod
+	 *            The method containing the call site.
+	 * @param programCounter
+	 *            The program counter of the call site.
+	 * @return The N to use for the given call site.
+	 */
+	public int getNToUseForStreams(MethodReference enclosingMethod, int programCounter) {
+		return this.callSiteToNToUseForStreams.getOrDefault(Pair.make(enclosingMethod, programCounter),
+				this.getNToUseForStreams());
+	}
+
 	/**
 	 * Get the project used to create this engine.
 	 *
@@ -201,7 +547,172 @@ public class EclipseProjectAnalysisEngine<I extends InstanceKey> extends JDTJava
 		return this.project;
 	}
 
+	/**
+	 * Returns the projects whose analysis scopes make up this engine's.
+	 *
+	 * @return {@link #getProject()} followed by any merged projects.
+	 */
+	public List<IJavaProject> getProjects() {
+		List<IJavaProject> ret = new ArrayList<>(this.mergedProjects.size() + 1);
+		ret.add(this.getProject());
+		ret.addAll(this.mergedProjects);
+		return ret;
+	}
+
+	/**
+	 * Returns true iff the current call graph was built using the fallback
+	 * policy, i.e., with a lower N for instances of {@link BaseStream} than
+	 * configured, because the call graph budget was exceeded.
+	 *
+	 * @return True iff the fallback policy is in use.
+	 */
+	public boolean isUsingFallbackPolicy() {
+		return this.usingFallbackPolicy;
+	}
+
+	/**
+	 * Rebuilds the call graph from scratch, e.g., after the N for some call sites
+	 * has been changed. Unlike
+	 * {@link #buildSafeCallGraph(AnalysisOptions, IProgressMonitor)}, the fallback
+	 * policy isn't used. Instead, if the rebuild exceeds the given time budget or
+	 * the call graph budget, the previous call graph, pointer analysis, and call
+	 * graph builder are kept.
+	 *
+	 * @param options
+	 *            The options to build the call graph with.
+	 * @param timeBudget
+	 *            The time, in milliseconds, that the rebuild may take.
+	 * @param monitor
+	 *            To report progress and check for cancellation.
+	 * @return True iff the call graph was rebuilt within budget.
+	 */
+	public boolean rebuildSafeCallGraph(AnalysisOptions options, long timeBudget, IProgressMonitor monitor)
+			throws CallGraphBuilderCancelException, CancelException {
+		SubMonitor subMonitor = SubMonitor.convert(monitor, "Rebuilding call graph...", 1);
+		com.ibm.wala.util.MonitorUtil.IProgressMonitor delegate = ProgressMonitorDelegate
+				.createProgressMonitorDelegate(subMonitor.split(1));
+
+		long rebuildTimeBudget = this.getCallGraphTimeBudget() > 0
+				? Math.min(timeBudget, this.getCallGraphTimeBudget())
+				: timeBudget;
+
+		BudgetedProgressMonitor budgetedMonitor = new BudgetedProgressMonitor(delegate, rebuildTimeBudget,
+				this.getCallGraphHeapBudget());
+
+		CallGraphBuilder<?> previousCallGraphBuilder = this.callGraphBuilder;
+		CallGraph previousCallGraph = this.cg;
+		PointerAnalysis<I> previousPointerAnalysis = this.pointerAnalysis;
+
+		this.clearCallGraphBuilder();
+
+		try {
+			this.buildSafeCallGraph(options, budgetedMonitor, budgetedMonitor);
+			return true;
+		} catch (CallGraphBuilderCancelException e) {
+			if (!budgetedMonitor.isBudgetExceeded())
+				throw e;
+
+			LOGGER.warning(() -> "Budget exceeded while rebuilding call graph for: "
+					+ this.getProject().getElementName() + ". " + budgetedMonitor.getCancelMessage()
+					+ " Keeping the previous call graph.");
+
+			this.callGraphBuilder = previousCallGraphBuilder;
+			this.cg = previousCallGraph;
+			this.pointerAnalysis = previousPointerAnalysis;
+			return false;
+		}
+	}
+
+	/**
+	 * Set the heap, in bytes, that may be in use while building the call graph
+	 * before falling back to a cheaper policy.
+	 *
+	 * @param callGraphHeapBudget
+	 *            The heap budget or zero for none.
+	 */
+	public void setCallGraphHeapBudget(long callGraphHeapBudget) {
+		this.callGraphHeapBudget = callGraphHeapBudget;
+	}
+
+	/**
+	 * Set the time, in milliseconds, that building the call graph may take
+	 * before falling back to a cheaper policy.
+	 *
+	 * @param callGraphTimeBudget
+	 *            The time budget or zero for none.
+	 */
+	public void setCallGraphTimeBudget(long callGraphTimeBudget) {
+		this.callGraphTimeBudget = callGraphTimeBudget;
+	}
+
+	/**
+	 * Set other projects whose analysis scopes should be merged into that of
+	 * this engine's project, e.g., ones it depends on or that depend on it, such
+	 * that code they share is analyzed only once. Must be set before the
+	 * analysis scope is built.
+	 *
+	 * @param mergedProjects
+	 *            The projects to merge.
+	 */
+	public void setMergedProjects(Collection<IJavaProject> mergedProjects) {
+		this.mergedProjects = new ArrayList<>(mergedProjects);
+	}
+
 	protected void setNToUseForStreams(int nToUseForStreams) {
 		this.nToUseForStreams = nToUseForStreams;
 	}
+
+	/**
+	 * Set the N to use for instances of {@link BaseStream} created (transitively)
+	 * from the given call site. Takes effect the next time a call graph builder
+	 * is created.
+	 *
+	 * @param enclosingMethod
+	 *            The method containing the call site.
+	 * @param programCounter
+	 *            The program counter of the call site.
+	 * @param nToUseForStreams
+	 *            The N to use.
+	 * @see #clearCallGraphBuilder()
+	 */
+	public void setNToUseForStreams(MethodReference enclosingMethod, int programCounter, int nToUseForStreams) {
+		this.callSiteToNToUseForStreams.put(Pair.make(enclosingMethod, programCounter), nToUseForStreams);
+	}
+
+	/**
+	 * Set the primordial loaders to share with the other engines of the analysis
+	 * run using the same JRE. Must be set before the class hierarchy is built.
+	 *
+	 * @param sharedPrimordialClassLoaders
+	 *            The primordial loaders of the run, which are consulted and
+	 *            updated, or null if primordial classes shouldn't be shared.
+	 * @see SharedPrimordialClassLoaderFactory
+	 */
+	public void setSharedPrimordialClassLoaders(Map<String, IClassLoader> sharedPrimordialClassLoaders) {
+		this.sharedPrimordialClassLoaders = sharedPrimordialClassLoaders;
+	}
+
+	public void setUseStreamLibrarySummaries(boolean useStreamLibrarySummaries) {
+		this.useStreamLibrarySummaries = useStreamLibrarySummaries;
+	}
+
+	public boolean shouldSharePrimordialClassHierarchy() {
+		return this.sharedPrimordialClassLoaders != null;
+	}
+
+	public boolean shouldUseStreamLibrarySummaries() {
+		return this.useStreamLibrarySummaries;
+	}
+
+	/**
+	 * Switch to the fallback policy, discarding the partially built call graph.
+	 */
+	private void useFallbackPolicy() {
+		this.clearCallGraphBuilder();
+		this.cg = null;
+		this.pointerAnalysis = null;
+		this.callSiteToNToUseForStreams.clear();
+		this.setNToUseForStreams(N_FOR_STREAMS_FALLBACK);
+		this.usingFallbackPolicy = true;
+	}
 }
@@ -0,0 +1,84 @@
+package edu.cuny.hunter.streamrefactoring.core.wala;
+
+import static com.ibm.wala.types.ClassLoaderReference.Primordial;
+import static edu.cuny.hunter.streamrefactoring.core.utils.LoggerNames.LOGGER_NAME;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+import com.ibm.wala.cast.java.translator.jdt.JDTClassLoaderFactory;
+import com.ibm.wala.classLoader.IClass;
+import com.ibm.wala.classLoader.IClassLoader;
+import com.ibm.wala.classLoader.Module;
+import com.ibm.wala.ipa.callgraph.AnalysisScope;
+import com.ibm.wala.ipa.cha.IClassHierarchy;
+import com.ibm.wala.types.ClassLoaderReference;
+import com.ibm.wala.util.config.SetOfClasses;
+
+/**
+ * A {@link JDTClassLoaderFactory} whose primordial {@link IClassLoader}s, along
+ * with their loaded {@link IClass}es, are shared among the class hierarchies
+ * built from the same JRE during a single analysis run. Primordial loaders are
+ * keyed by the modules, i.e., the JRE jars, they load.
+ *
+ * @apiNote A shared loader, and thus {@link IClass#getClassHierarchy()} of the
+ *          classes it loads, retains the class hierarchy it was first created
+ *          for. As such, the given loaders should be released at the end of the
+ *          run, and the class hierarchy should be taken from elsewhere, e.g.,
+ *          the call graph. Also, not all of the lazily computed state of the
+ *          {@link IClass}es it loads is thread-safe. As such, it shouldn't be
+ *          used by class hierarchies that are analyzed concurrently.
+ */
+public class SharedPrimordialClassLoaderFactory extends JDTClassLoaderFactory {
+
+	private static final Logger LOGGER = Logger.getLogger(LOGGER_NAME);
+
+	/**
+	 * The primordial loaders shared among the class hierarchies of the run, keyed
+	 * by {@link #getKey(AnalysisScope)}.
+	 */
+	private Map<String, IClassLoader> keyToPrimordialClassLoaderMap;
+
+	/**
+	 * Create a new {@link SharedPrimordialClassLoaderFactory}.
+	 *
+	 * @param exclusions                    The classes to exclude.
+	 * @param keyToPrimordialClassLoaderMap The primordial loaders shared by the
+	 *                                      factories of the run, which is
+	 *                                      consulted and updated.
+	 */
+	public SharedPrimordialClassLoaderFactory(SetOfClasses exclusions,
+			Map<String, IClassLoader> keyToPrimordialClassLoaderMap) {
+		super(exclusions);
+		this.keyToPrimordialClassLoaderMap = keyToPrimordialClassLoaderMap;
+	}
+
+	private String getKey(AnalysisScope scope) {
+		return scope.getModules(Primordial).stream().map(Module::toString).sorted()
+				.collect(Collectors.joining(";", "exclusions=" + (this.getExclusions() != null) + ";", ""));
+	}
+
+	@Override
+	protected IClassLoader makeNewClassLoader(ClassLoaderReference classLoaderReference, IClassHierarchy cha,
+			IClassLoader parent, AnalysisScope scope) throws IOException {
+		if (!classLoaderReference.equals(Primordial))
+			return super.makeNewClassLoader(classLoaderReference, cha, parent, scope);
+
+		String key = this.getKey(scope);
+
+		synchronized (this.keyToPrimordialClassLoaderMap) {
+			IClassLoader loader = this.keyToPrimordialClassLoaderMap.get(key);
+
+			if (loader == null) {
+				LOGGER.info("Loading primordial classes.");
+				loader = super.makeNewClassLoader(classLoaderReference, cha, parent, scope);
+				this.keyToPrimordialClassLoaderMap.put(key, loader);
+			} else
+				LOGGER.info("Reusing primordial classes.");
+
+			return loader;
+		}
+	}
+}
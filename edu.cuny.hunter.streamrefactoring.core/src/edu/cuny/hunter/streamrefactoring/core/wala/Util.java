@@ -1,5 +1,6 @@
 package edu.cuny.hunter.streamrefactoring.core.wala;
 
+import static com.ibm.wala.ipa.callgraph.impl.Util.addBypassLogic;
 import static com.ibm.wala.ipa.callgraph.impl.Util.addDefaultBypassLogic;
 import static com.ibm.wala.ipa.callgraph.impl.Util.addDefaultSelectors;
 import static com.ibm.wala.ipa.callgraph.propagation.cfa.ZeroXInstanceKeys.ALLOCATIONS;
@@ -33,6 +34,12 @@ import com.ibm.wala.util.collections.HashSetFactory;
 public final class Util {
 
 	private static final String OS_NAME = "os.name";
+
+	/**
+	 * The file containing summaries of the operations of the
+	 * {@link java.util.stream} pipeline implementation.
+	 */
+	private static final String STREAM_LIBRARY_SUMMARIES_FILE = "StreamLibrarySummaries.xml";
 	private static final String WINDOWS = "Windows";
 
 	/**
@@ -50,9 +57,10 @@ public final class Util {
 	 *            set of {@link Module}s which have already been seen, and should
 	 *            not be added to the analysis scope
 	 */
-	private static void buildScope(ClassLoaderReference loader, Collection<EclipseProjectPath> projectPaths,
-			AnalysisScope scope, Collection<Module> seen) throws IOException {
-		for (EclipseProjectPath path : projectPaths) {
+	private static void buildScope(ClassLoaderReference loader,
+			Collection<? extends EclipseProjectPath<?, ?>> projectPaths, AnalysisScope scope, Collection<Module> seen)
+			throws IOException {
+		for (EclipseProjectPath<?, ?> path : projectPaths) {
 			AnalysisScope pScope = path.toAnalysisScope((File) null);
 			for (Module m : pScope.getModules(loader))
 				if (!seen.contains(m)) {
@@ -80,10 +88,30 @@ public final class Util {
 	 */
 	public static SSAPropagationCallGraphBuilder makeNCFABuilder(int n, AnalysisOptions options, AnalysisCache cache,
 			IClassHierarchy cha, AnalysisScope scope, int nToUseForStreams) {
+		return makeNCFABuilder(n, options, cache, cha, scope, nToUseForStreams, false);
+	}
+
+	/**
+	 * make a {@link CallGraphBuilder} that uses call-string context sensitivity,
+	 * with call-string length limited to n, and a context-sensitive
+	 * allocation-site-based heap abstraction.
+	 *
+	 * @param nToUseForStreams
+	 *            The N to use specifically for instances of {@link BaseStream}.
+	 * @param useStreamLibrarySummaries
+	 *            True iff the {@link java.util.stream} pipeline implementation
+	 *            should be bypassed using summaries of its operations.
+	 */
+	public static SSAPropagationCallGraphBuilder makeNCFABuilder(int n, AnalysisOptions options, AnalysisCache cache,
+			IClassHierarchy cha, AnalysisScope scope, int nToUseForStreams, boolean useStreamLibrarySummaries) {
 		if (options == null)
 			throw new IllegalArgumentException("options is null");
 		addDefaultSelectors(options, cha);
 		addDefaultBypassLogic(options, scope, Util.class.getClassLoader(), cha);
+
+		if (useStreamLibrarySummaries)
+			addBypassLogic(options, scope, Util.class.getClassLoader(), STREAM_LIBRARY_SUMMARIES_FILE, cha);
+
 		ContextSelector appSelector = null;
 		SSAContextInterpreter appInterpreter = null;
 		SSAPropagationCallGraphBuilder result = new nCFABuilderWithActualParametersInContext(n, cha, options, cache,
@@ -98,9 +126,16 @@ public final class Util {
 	/**
 	 * create an analysis scope as the union of a bunch of EclipseProjectPath
 	 */
-	public static AnalysisScope mergeProjectPaths(Collection<EclipseProjectPath> projectPaths) throws IOException {
-		AnalysisScope scope = AnalysisScope.createJavaAnalysisScope();
+	public static AnalysisScope mergeProjectPaths(Collection<? extends EclipseProjectPath<?, ?>> projectPaths)
+			throws IOException {
+		return mergeProjectPaths(projectPaths, AnalysisScope.createJavaAnalysisScope());
+	}
 
+	/**
+	 * add the union of a bunch of EclipseProjectPath to the given analysis scope
+	 */
+	public static AnalysisScope mergeProjectPaths(Collection<? extends EclipseProjectPath<?, ?>> projectPaths,
+			AnalysisScope scope) throws IOException {
 		Collection<Module> seen = HashSetFactory.make();
 		// to avoid duplicates, we first add all application modules, then
 		// extension
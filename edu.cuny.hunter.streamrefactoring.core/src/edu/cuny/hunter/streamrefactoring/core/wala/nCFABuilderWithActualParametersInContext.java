@@ -3,6 +3,8 @@ package edu.cuny.hunter.streamrefactoring.core.wala;
 import com.ibm.wala.analysis.reflection.ReflectionContextInterpreter;
 import com.ibm.wala.ipa.callgraph.AnalysisCache;
 import com.ibm.wala.ipa.callgraph.AnalysisOptions;
+import com.ibm.wala.ipa.callgraph.CallGraph;
+import com.ibm.wala.ipa.callgraph.CallGraphBuilderCancelException;
 import com.ibm.wala.ipa.callgraph.ContextSelector;
 import com.ibm.wala.ipa.callgraph.impl.DefaultContextSelector;
 import com.ibm.wala.ipa.callgraph.impl.DelegatingContextSelector;
@@ -13,6 +15,7 @@ import com.ibm.wala.ipa.callgraph.propagation.cfa.DefaultPointerKeyFactory;
 import com.ibm.wala.ipa.callgraph.propagation.cfa.DefaultSSAInterpreter;
 import com.ibm.wala.ipa.callgraph.propagation.cfa.DelegatingSSAContextInterpreter;
 import com.ibm.wala.ipa.cha.IClassHierarchy;
+import com.ibm.wala.util.MonitorUtil.IProgressMonitor;
 
 public class nCFABuilderWithActualParametersInContext extends SSAPropagationCallGraphBuilder {
 
@@ -46,4 +49,21 @@ public class nCFABuilderWithActualParametersInContext extends SSAPropagationCall
 				: new DelegatingSSAContextInterpreter(appContextInterpreter, defI);
 		this.setContextInterpreter(contextInterpreter);
 	}
+
+	/**
+	 * {@inheritDoc} Afterward, releases the call strings memoized per call edge
+	 * by the {@link nCFAContextWithReceiversSelector}.
+	 */
+	@Override
+	public CallGraph makeCallGraph(AnalysisOptions options, IProgressMonitor monitor)
+			throws IllegalArgumentException, CallGraphBuilderCancelException {
+		try {
+			return super.makeCallGraph(options, monitor);
+		} finally {
+			ContextSelector contextSelector = this.getContextSelector();
+
+			if (contextSelector instanceof nCFAContextWithReceiversSelector)
+				((nCFAContextWithReceiversSelector) contextSelector).clearCallStringCache();
+		}
+	}
 }
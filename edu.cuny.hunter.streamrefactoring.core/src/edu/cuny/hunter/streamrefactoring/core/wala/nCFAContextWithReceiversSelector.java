@@ -2,8 +2,9 @@ package edu.cuny.hunter.streamrefactoring.core.wala;
 
 import static edu.cuny.hunter.streamrefactoring.core.utils.LoggerNames.LOGGER_NAME;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 import java.util.stream.BaseStream;
 
@@ -17,46 +18,16 @@ import com.ibm.wala.ipa.callgraph.propagation.InstanceKey;
 import com.ibm.wala.ipa.callgraph.propagation.cfa.CallString;
 import com.ibm.wala.ipa.callgraph.propagation.cfa.CallStringContext;
 import com.ibm.wala.ipa.callgraph.propagation.cfa.nCFAContextSelector;
+import com.ibm.wala.types.MethodReference;
 import com.ibm.wala.types.TypeReference;
+import com.ibm.wala.util.collections.Pair;
+import com.ibm.wala.util.intset.MutableMapping;
+import com.ibm.wala.util.intset.OrdinalSetMapping;
 
 import edu.cuny.hunter.streamrefactoring.core.analysis.Util;
 
 public class nCFAContextWithReceiversSelector extends nCFAContextSelector {
 
-	protected class CallStringTriple {
-
-		CGNode node;
-
-		CallSiteReference site;
-		IMethod target;
-
-		public CallStringTriple(CGNode node, CallSiteReference site, IMethod target) {
-			this.node = node;
-			this.site = site;
-			this.target = target;
-		}
-
-		@Override
-		public boolean equals(Object obj) {
-			if (obj instanceof CallStringTriple) {
-				CallStringTriple rhs = (CallStringTriple) obj;
-				return this.node.equals(rhs.node) && this.site.equals(rhs.site) && this.target.equals(rhs.target);
-			} else
-				return false;
-		}
-
-		@Override
-		public int hashCode() {
-			StringBuilder builder = new StringBuilder();
-
-			builder.append(this.node.hashCode());
-			builder.append(this.site.hashCode());
-			builder.append(this.target.hashCode());
-
-			return builder.toString().hashCode();
-		}
-	}
-
 	/**
 	 * The default N to use if the instance implements BaseStream.
 	 */
@@ -64,13 +35,45 @@ public class nCFAContextWithReceiversSelector extends nCFAContextSelector {
 
 	private static final Logger LOGGER = Logger.getLogger(LOGGER_NAME);
 
-	protected Map<CallStringTriple, CallStringWithReceivers> callStringWithReceiversMap = new HashMap<>();
+	/**
+	 * Map from caller nodes to their call sites to the targets called from them
+	 * to the call strings of the corresponding contexts. A call string is absent
+	 * if the target isn't to be analyzed context-sensitively. Nested rather than
+	 * keyed by a composite to avoid allocating a key on each lookup.
+	 */
+	protected Map<CGNode, Map<CallSiteReference, Map<IMethod, Optional<CallStringWithReceivers>>>> callStringWithReceiversMap = new ConcurrentHashMap<>();
+
+	/**
+	 * Map from call sites, identified by their enclosing method and program
+	 * counter, to the N to use for instances of {@link BaseStream} created
+	 * (transitively) from them. Takes precedence over the general N for streams
+	 * if larger.
+	 */
+	private Map<Pair<MethodReference, Integer>, Integer> callSiteToContextLengthForStreams = new ConcurrentHashMap<>();
+
+	/**
+	 * Canonical instances of the call strings created by this selector. Equal
+	 * call strings denote the same context and thus share their receivers.
+	 * Retained as long as this selector is, i.e., its builder, so that the
+	 * builder can be reused to build other call graphs. Bounded by the number of
+	 * call string contexts of the call graphs built, as each call string created
+	 * is the context of a node.
+	 */
+	private Map<CallString, CallStringWithReceivers> canonicalCallStrings = new ConcurrentHashMap<>();
 
 	/**
 	 * The N to use if the instance implements {@link BaseStream}.
 	 */
 	private int contextLengthForStreams = CONTEXT_LENGTH_FOR_STREAMS_DEFAULT;
 
+	/**
+	 * The mapping of receivers to the indices stored by the call strings created
+	 * by this selector. Retained as long as any of those call strings are, i.e.,
+	 * the call graphs built. Bounded by the number of instance keys of the
+	 * pointer analysis, as receivers are never removed.
+	 */
+	private OrdinalSetMapping<InstanceKey> receiverMapping = MutableMapping.make();
+
 	/**
 	 * Create a new {@link nCFAContextWithReceiversSelector}.
 	 *
@@ -112,45 +115,71 @@ public class nCFAContextWithReceiversSelector extends nCFAContextSelector {
 			return new CallStringContextPair(cs, baseContext);
 	}
 
+	/**
+	 * Clears the call strings memoized per call edge. The canonical call strings,
+	 * which are referenced by the contexts of the call graph, are retained.
+	 */
+	public void clearCallStringCache() {
+		this.getCallStringWithReceiversMap().clear();
+	}
+
+	protected CallStringWithReceivers computeCallString(CGNode caller, CallSiteReference site, IMethod target) {
+		int length = this.getLength(caller, site, target);
+
+		if (length > 0) {
+			CallString callString = (CallString) caller.getContext().get(CALL_STRING);
+			CallStringWithReceivers ret;
+
+			if (callString != null)
+				ret = new CallStringWithReceivers(site, caller.getMethod(), length, callString, this.receiverMapping);
+			else
+				ret = new CallStringWithReceivers(site, caller.getMethod(), this.receiverMapping);
+
+			return this.intern(ret);
+		} else
+			return null;
+	}
+
+	/**
+	 * Returns the call string of the context for the given target called from
+	 * the given site in the given caller, computing it upon the first call. May
+	 * be called concurrently.
+	 *
+	 * @return The call string, including the given receiver, or null if the
+	 *         target isn't to be analyzed context-sensitively.
+	 */
 	protected CallStringWithReceivers getCallString(CGNode caller, CallSiteReference site, IMethod target,
 			InstanceKey[] actualParameters) {
-		CallStringTriple triple = new CallStringTriple(caller, site, target);
+		// only allocate upon a miss so that the common case doesn't.
+		Map<CallSiteReference, Map<IMethod, Optional<CallStringWithReceivers>>> siteMap = this
+				.getCallStringWithReceiversMap().get(caller);
 
-		if (this.getCallStringWithReceiversMap().containsKey(triple)) {
-			// found.
-			CallStringWithReceivers ret = this.getCallStringWithReceiversMap().get(triple);
+		if (siteMap == null)
+			siteMap = this.getCallStringWithReceiversMap().computeIfAbsent(caller, k -> new ConcurrentHashMap<>());
 
-			// add the receiver.
-			if (actualParameters != null && actualParameters.length > 0)
-				ret.addPossibleReceiver(actualParameters[0]);
+		Map<IMethod, Optional<CallStringWithReceivers>> targetMap = siteMap.get(site);
 
-			return ret;
-		} else {
-			// not found. Compute it.
-			CallStringWithReceivers ret = null;
-			int length = this.getLength(caller, site, target);
+		if (targetMap == null)
+			targetMap = siteMap.computeIfAbsent(site, k -> new ConcurrentHashMap<>());
+
+		Optional<CallStringWithReceivers> callString = targetMap.get(target);
 
-			if (length > 0) {
-				CallString callString = (CallString) caller.getContext().get(CALL_STRING);
+		if (callString == null)
+			// not found. Compute it.
+			callString = targetMap.computeIfAbsent(target,
+					k -> Optional.ofNullable(this.computeCallString(caller, site, k)));
 
-				if (callString != null)
-					ret = new CallStringWithReceivers(site, caller.getMethod(), length, callString);
-				else
-					ret = new CallStringWithReceivers(site, caller.getMethod());
-			} else
-				ret = null;
+		CallStringWithReceivers ret = callString.orElse(null);
 
-			// if we have a receiver.
-			if (ret != null && actualParameters != null && actualParameters.length > 0)
-				// add it.
-				ret.addPossibleReceiver(actualParameters[0]);
+		// if we have a receiver.
+		if (ret != null && actualParameters != null && actualParameters.length > 0)
+			// add it.
+			ret.addPossibleReceiver(actualParameters[0]);
 
-			this.getCallStringWithReceiversMap().put(triple, ret);
-			return ret;
-		}
+		return ret;
 	}
 
-	protected Map<CallStringTriple, CallStringWithReceivers> getCallStringWithReceiversMap() {
+	protected Map<CGNode, Map<CallSiteReference, Map<IMethod, Optional<CallStringWithReceivers>>>> getCallStringWithReceiversMap() {
 		return this.callStringWithReceiversMap;
 	}
 
@@ -158,6 +187,46 @@ public class nCFAContextWithReceiversSelector extends nCFAContextSelector {
 		return this.contextLengthForStreams;
 	}
 
+	/**
+	 * Returns the N to use for instances of {@link BaseStream} created
+	 * (transitively) from the given call site in the given caller.
+	 *
+	 * @param caller
+	 *            The node containing the call site.
+	 * @param site
+	 *            The call site.
+	 * @return The largest N set for the given call site or for any call site in
+	 *         the caller's call string, or the general N for streams if none is
+	 *         set.
+	 */
+	protected int getContextLengthForStreams(CGNode caller, CallSiteReference site) {
+		int ret = this.getContextLengthForStreams();
+
+		if (this.callSiteToContextLengthForStreams.isEmpty())
+			return ret;
+
+		ret = Math.max(ret, this.callSiteToContextLengthForStreams.getOrDefault(
+				Pair.make(caller.getMethod().getReference(), site.getProgramCounter()), ret));
+
+		CallString callString = (CallString) caller.getContext().get(CALL_STRING);
+
+		if (callString != null) {
+			CallSiteReference[] callSiteRefs = callString.getCallSiteRefs();
+			IMethod[] methods = callString.getMethods();
+
+			for (int i = 0; i < callSiteRefs.length; i++)
+				ret = Math.max(ret, this.callSiteToContextLengthForStreams.getOrDefault(
+						Pair.make(methods[i].getReference(), callSiteRefs[i].getProgramCounter()), ret));
+		}
+
+		return ret;
+	}
+
+	private CallStringWithReceivers intern(CallStringWithReceivers callString) {
+		CallStringWithReceivers ret = this.canonicalCallStrings.putIfAbsent(callString, callString);
+		return ret == null ? callString : ret;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 *
@@ -167,10 +236,12 @@ public class nCFAContextWithReceiversSelector extends nCFAContextSelector {
 	@Override
 	protected int getLength(CGNode caller, CallSiteReference site, IMethod target) {
 		TypeReference typeToCheck = Util.getEvaluationType(target);
-		boolean implementsBaseStream = Util.implementsBaseStream(typeToCheck, target.getClassHierarchy());
+		// the class hierarchy of a primordial target may be that of another engine
+		// sharing its primordial classes.
+		boolean implementsBaseStream = Util.implementsBaseStream(typeToCheck, caller.getClassHierarchy());
 
 		if (implementsBaseStream) {
-			int lengthForStreams = this.getContextLengthForStreams();
+			int lengthForStreams = this.getContextLengthForStreams(caller, site);
 			LOGGER.finer(() -> "Using N = " + lengthForStreams + ".");
 			return lengthForStreams;
 		} else
@@ -180,4 +251,21 @@ public class nCFAContextWithReceiversSelector extends nCFAContextSelector {
 	protected void setContextLengthForStreams(int contextLengthForStreams) {
 		this.contextLengthForStreams = contextLengthForStreams;
 	}
+
+	/**
+	 * Set the N to use for instances of {@link BaseStream} created (transitively)
+	 * from the given call site.
+	 *
+	 * @param enclosingMethod
+	 *            The method containing the call site.
+	 * @param programCounter
+	 *            The program counter of the call site.
+	 * @param contextLengthForStreams
+	 *            The N to use.
+	 */
+	public void setContextLengthForStreams(MethodReference enclosingMethod, int programCounter,
+			int contextLengthForStreams) {
+		this.callSiteToContextLengthForStreams.put(Pair.make(enclosingMethod, programCounter),
+				contextLengthForStreams);
+	}
 }
\ No newline at end of file
@@ -119,6 +119,14 @@ public class EvaluateConvertToParallelStreamRefactoringHandler extends AbstractH
 
 	private static final String PERFORM_CHANGE_PROPERTY_KEY = "edu.cuny.hunter.streamrefactoring.eval.performChange";
 
+	private static final boolean USE_DEMAND_DRIVEN_TYPESTATE_DEFAULT = false;
+
+	private static final String USE_DEMAND_DRIVEN_TYPESTATE_PROPERTY_KEY = "edu.cuny.hunter.streamrefactoring.eval.useDemandDrivenTypestate";
+
+	private static final boolean USE_PRODUCT_TYPESTATE_RULE_DEFAULT = false;
+
+	private static final String USE_PRODUCT_TYPESTATE_RULE_PROPERTY_KEY = "edu.cuny.hunter.streamrefactoring.eval.useProductTypestateRule";
+
 	private static String[] buildAttributeColumns(String attribute) {
 		return new String[] { "subject", "stream", "start pos", "length", "method", "type FQN", attribute };
 	}
@@ -295,6 +303,24 @@ public class EvaluateConvertToParallelStreamRefactoringHandler extends AbstractH
 			return Boolean.valueOf(performChangePropertyValue);
 	}
 
+	private static boolean shouldUseDemandDrivenTypestate() {
+		String value = System.getenv(USE_DEMAND_DRIVEN_TYPESTATE_PROPERTY_KEY);
+
+		if (value == null)
+			return USE_DEMAND_DRIVEN_TYPESTATE_DEFAULT;
+		else
+			return Boolean.valueOf(value);
+	}
+
+	private static boolean shouldUseProductTypestateRule() {
+		String value = System.getenv(USE_PRODUCT_TYPESTATE_RULE_PROPERTY_KEY);
+
+		if (value == null)
+			return USE_PRODUCT_TYPESTATE_RULE_DEFAULT;
+		else
+			return Boolean.valueOf(value);
+	}
+
 	/**
 	 * the command has been executed, so extract extract the needed information from
 	 * the application context.
@@ -340,6 +366,7 @@ public class EvaluateConvertToParallelStreamRefactoringHandler extends AbstractH
 					resultsHeader.add(action.toString());
 
 				resultsHeader.add("time (s)");
+				resultsHeader.add("typestate solver time (s)");
 
 				resultsPrinter = createCSVPrinter("results.csv",
 						resultsHeader.toArray(new String[resultsHeader.size()]));
@@ -378,6 +405,8 @@ public class EvaluateConvertToParallelStreamRefactoringHandler extends AbstractH
 				boolean shouldFindImplicitTestEntrypoints = shouldFindImplicitTestEntrypoints();
 				boolean shouldFindImplicitBenchmarkEntrypoints = shouldFindImplicitBenchmarkEntrypoints();
 				boolean shouldFindImplicitJavaFXEntrypoints = shouldFindImplicitJavaFXEntrypoints();
+				boolean shouldUseProductTypestateRule = shouldUseProductTypestateRule();
+				boolean shouldUseDemandDrivenTypestate = shouldUseDemandDrivenTypestate();
 
 				for (IJavaProject javaProject : javaProjects) {
 					if (!javaProject.isStructureKnown())
@@ -405,6 +434,8 @@ public class EvaluateConvertToParallelStreamRefactoringHandler extends AbstractH
 							nToUseForStreams, shouldFindImplicitEntrypoints, shouldFindImplicitTestEntrypoints,
 							shouldFindImplicitBenchmarkEntrypoints, shouldFindImplicitJavaFXEntrypoints,
 							Optional.of(monitor));
+					processor.setUseProductTypestateRule(shouldUseProductTypestateRule);
+					processor.setUseDemandDrivenTypestate(shouldUseDemandDrivenTypestate);
 					resultsTimeCollector.stop();
 					OptimizeStreamsRefactoringProcessor.setLoggingLevel(LOGGING_LEVEL);
 
@@ -586,6 +617,9 @@ public class EvaluateConvertToParallelStreamRefactoringHandler extends AbstractH
 					resultsPrinter.print((resultsTimeCollector.getCollectedTime()
 							- processor.getExcludedTimeCollector().getCollectedTime()) / 1000.0);
 
+					// time spent solving the typestate rules.
+					resultsPrinter.print(processor.getTypestateSolverTime() / 1000.0);
+
 					// end the record.
 					resultsPrinter.println();
 
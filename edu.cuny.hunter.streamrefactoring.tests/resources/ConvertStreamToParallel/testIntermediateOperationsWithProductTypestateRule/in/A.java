@@ -0,0 +1,17 @@
+package p;
+
+import java.util.BitSet;
+import java.util.stream.IntStream;
+
+import edu.cuny.hunter.streamrefactoring.annotations.*;
+
+class A {
+	@EntryPoint
+	void m() {
+		BitSet set = new BitSet();
+		IntStream stream2 = set.stream();
+		IntStream stream3 = stream2.distinct();
+		stream2.average();
+		stream3.average();
+	}
+}
\ No newline at end of file
@@ -0,0 +1,173 @@
+package edu.cuny.hunter.streamrefactoring.ui.tests;
+
+import com.ibm.wala.util.MonitorUtil.IProgressMonitor;
+
+import edu.cuny.hunter.streamrefactoring.core.wala.BudgetedProgressMonitor;
+import junit.framework.TestCase;
+
+public class BudgetedProgressMonitorTest extends TestCase {
+
+	/**
+	 * A {@link BudgetedProgressMonitor} whose garbage collections and heap in
+	 * use are set by the test.
+	 */
+	private static class ControlledBudgetedProgressMonitor extends BudgetedProgressMonitor {
+
+		private static long collectionCount;
+
+		private static long usedHeap;
+
+		ControlledBudgetedProgressMonitor(IProgressMonitor delegate, long timeBudget, long heapBudget) {
+			super(delegate, timeBudget, heapBudget);
+		}
+
+		@Override
+		protected long getCollectionCount() {
+			return collectionCount;
+		}
+
+		@Override
+		protected long getUsedHeap() {
+			return usedHeap;
+		}
+	}
+
+	private static class CanceledProgressMonitor implements IProgressMonitor {
+
+		@Override
+		public void beginTask(String task, int totalWork) {
+		}
+
+		@Override
+		public void cancel() {
+		}
+
+		@Override
+		public void done() {
+		}
+
+		@Override
+		public String getCancelMessage() {
+			return "Canceled.";
+		}
+
+		@Override
+		public boolean isCanceled() {
+			return true;
+		}
+
+		@Override
+		public void subTask(String subTask) {
+		}
+
+		@Override
+		public void worked(int units) {
+		}
+	}
+
+	private static final long HEAP_BUDGET = 1024;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		ControlledBudgetedProgressMonitor.collectionCount = 0;
+		ControlledBudgetedProgressMonitor.usedHeap = 0;
+	}
+
+	public void testDelegateCanceled() {
+		BudgetedProgressMonitor monitor = new BudgetedProgressMonitor(new CanceledProgressMonitor(), 0, 0);
+		assertTrue(monitor.isCanceled());
+		assertFalse(monitor.isBudgetExceeded());
+		assertEquals("Canceled.", monitor.getCancelMessage());
+	}
+
+	public void testHeapBudgetAfterCollection() {
+		BudgetedProgressMonitor monitor = new BudgetedProgressMonitor(null, 0, 1);
+		System.gc();
+		assertTrue(monitor.isBudgetExceeded());
+		assertTrue(monitor.isCanceled());
+		assertNotNull(monitor.getCancelMessage());
+	}
+
+	public void testHeapBudgetExceeded() {
+		BudgetedProgressMonitor monitor = new ControlledBudgetedProgressMonitor(null, 0, HEAP_BUDGET);
+		ControlledBudgetedProgressMonitor.usedHeap = HEAP_BUDGET + 1;
+		ControlledBudgetedProgressMonitor.collectionCount++;
+		assertTrue(monitor.isBudgetExceeded());
+	}
+
+	public void testHeapBudgetNotExceeded() {
+		BudgetedProgressMonitor monitor = new ControlledBudgetedProgressMonitor(null, 0, HEAP_BUDGET);
+		ControlledBudgetedProgressMonitor.usedHeap = HEAP_BUDGET;
+		ControlledBudgetedProgressMonitor.collectionCount++;
+		assertFalse(monitor.isBudgetExceeded());
+		assertFalse(monitor.isCanceled());
+	}
+
+	/**
+	 * The heap in use before a garbage collection may be mostly garbage.
+	 */
+	public void testHeapBudgetWithoutCollection() {
+		BudgetedProgressMonitor monitor = new ControlledBudgetedProgressMonitor(null, 0, HEAP_BUDGET);
+		ControlledBudgetedProgressMonitor.usedHeap = HEAP_BUDGET + 1;
+		assertFalse(monitor.isBudgetExceeded());
+
+		// garbage collected before the monitor's creation doesn't count.
+		ControlledBudgetedProgressMonitor.collectionCount++;
+		monitor = new ControlledBudgetedProgressMonitor(null, 0, HEAP_BUDGET);
+		assertFalse(monitor.isBudgetExceeded());
+	}
+
+	/**
+	 * The heap is measured only at the first poll following a garbage
+	 * collection.
+	 */
+	public void testHeapMeasuredOncePerCollection() {
+		BudgetedProgressMonitor monitor = new ControlledBudgetedProgressMonitor(null, 0, HEAP_BUDGET);
+		ControlledBudgetedProgressMonitor.collectionCount++;
+		assertFalse(monitor.isBudgetExceeded());
+
+		ControlledBudgetedProgressMonitor.usedHeap = HEAP_BUDGET + 1;
+		assertFalse(monitor.isBudgetExceeded());
+
+		ControlledBudgetedProgressMonitor.collectionCount++;
+		assertTrue(monitor.isBudgetExceeded());
+	}
+
+	public void testNoBudget() {
+		BudgetedProgressMonitor monitor = new BudgetedProgressMonitor(null, 0, 0);
+		System.gc();
+		assertFalse(monitor.isBudgetExceeded());
+		assertFalse(monitor.isCanceled());
+		assertNull(monitor.getCancelMessage());
+	}
+
+	/**
+	 * Once exceeded, the budget remains so.
+	 */
+	public void testStickyExceeded() {
+		BudgetedProgressMonitor monitor = new ControlledBudgetedProgressMonitor(null, 0, HEAP_BUDGET);
+		ControlledBudgetedProgressMonitor.usedHeap = HEAP_BUDGET + 1;
+		ControlledBudgetedProgressMonitor.collectionCount++;
+		assertTrue(monitor.isBudgetExceeded());
+		String message = monitor.getCancelMessage();
+
+		ControlledBudgetedProgressMonitor.usedHeap = 0;
+		ControlledBudgetedProgressMonitor.collectionCount++;
+		assertTrue(monitor.isBudgetExceeded());
+		assertEquals(message, monitor.getCancelMessage());
+	}
+
+	public void testTimeBudgetExceeded() throws InterruptedException {
+		BudgetedProgressMonitor monitor = new BudgetedProgressMonitor(null, 1, 0);
+		Thread.sleep(10);
+		assertTrue(monitor.isBudgetExceeded());
+		assertTrue(monitor.isCanceled());
+		assertNotNull(monitor.getCancelMessage());
+	}
+
+	public void testTimeBudgetNotExceeded() {
+		BudgetedProgressMonitor monitor = new BudgetedProgressMonitor(null, Long.MAX_VALUE / 2, 0);
+		assertFalse(monitor.isBudgetExceeded());
+	}
+}
@@ -0,0 +1,197 @@
+package edu.cuny.hunter.streamrefactoring.ui.tests;
+
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import com.ibm.safe.dfa.DFAState;
+import com.ibm.safe.dfa.IDFAState;
+import com.ibm.safe.rules.TypestateRule;
+import com.ibm.wala.ipa.callgraph.propagation.ConstantKey;
+import com.ibm.wala.ipa.callgraph.propagation.InstanceKey;
+import com.ibm.wala.ipa.cfg.BasicBlockInContext;
+import com.ibm.wala.ssa.analysis.IExplodedBasicBlock;
+
+import edu.cuny.hunter.streamrefactoring.core.analysis.InstanceBlockStateTable;
+import junit.framework.TestCase;
+
+public class InstanceBlockStateTableTest extends TestCase {
+
+	/**
+	 * The number of typestate rule and state combinations that can be encoded.
+	 */
+	private static final int MAX_COMBINATIONS = Long.SIZE - 1;
+
+	/**
+	 * Returns a new block, which is only equal to itself.
+	 */
+	private static BasicBlockInContext<IExplodedBasicBlock> block(String name) {
+		IExplodedBasicBlock delegate = (IExplodedBasicBlock) Proxy.newProxyInstance(
+				InstanceBlockStateTableTest.class.getClassLoader(), new Class<?>[] { IExplodedBasicBlock.class },
+				(proxy, method, args) -> {
+					switch (method.getName()) {
+					case "equals":
+						return proxy == args[0];
+					case "hashCode":
+						return System.identityHashCode(proxy);
+					case "toString":
+						return name;
+					default:
+						throw new UnsupportedOperationException(method.getName());
+					}
+				});
+		return new BasicBlockInContext<>(null, delegate);
+	}
+
+	private static InstanceKey instance(String name) {
+		return new ConstantKey<>(name, null);
+	}
+
+	private static TypestateRule rule(String name) {
+		TypestateRule ret = new TypestateRule();
+		ret.setName(name);
+		return ret;
+	}
+
+	private static IDFAState state(String name) {
+		DFAState ret = new DFAState();
+		ret.setName(name);
+		return ret;
+	}
+
+	private static Set<IDFAState> setOf(IDFAState... states) {
+		return new HashSet<>(Arrays.asList(states));
+	}
+
+	private InstanceBlockStateTable table = new InstanceBlockStateTable();
+
+	public void testDecodeNoStates() {
+		assertEquals(Collections.emptySet(), this.table.decode(0));
+	}
+
+	public void testEncodeDecode() {
+		TypestateRule rule = rule("rule");
+		IDFAState s1 = state("s1");
+		IDFAState s2 = state("s2");
+
+		long bit1 = this.table.encode(rule, s1);
+		long bit2 = this.table.encode(rule, s2);
+
+		assertEquals(1, Long.bitCount(bit1));
+		assertEquals(1, Long.bitCount(bit2));
+		assertTrue(bit1 != bit2);
+
+		// encoding is stable.
+		assertEquals(bit1, this.table.encode(rule, s1));
+
+		assertEquals(setOf(s1), this.table.decode(bit1));
+		assertEquals(setOf(s1, s2), this.table.decode(bit1 | bit2));
+		assertEquals(s2, this.table.decodeState(Long.numberOfTrailingZeros(bit2)));
+	}
+
+	public void testGet() {
+		TypestateRule rule = rule("rule");
+		IDFAState s1 = state("s1");
+		IDFAState s2 = state("s2");
+		InstanceKey instance = instance("i");
+		BasicBlockInContext<IExplodedBasicBlock> block1 = block("b1");
+		BasicBlockInContext<IExplodedBasicBlock> block2 = block("b2");
+
+		this.table.add(instance, block1, rule, s1);
+		this.table.add(instance, block1, rule, s2);
+		this.table.add(instance, block2, rule, s2);
+
+		assertEquals(setOf(s1, s2), this.table.decode(this.table.get(instance, block1, rule)));
+		assertEquals(setOf(s2), this.table.decode(this.table.get(instance, block2, rule)));
+	}
+
+	public void testGrowth() {
+		TypestateRule rule = rule("rule");
+		IDFAState state = state("s");
+		InstanceKey[] instances = new InstanceKey[100];
+		@SuppressWarnings("unchecked")
+		BasicBlockInContext<IExplodedBasicBlock>[] blocks = new BasicBlockInContext[100];
+
+		for (int i = 0; i < instances.length; i++) {
+			instances[i] = instance("i" + i);
+			blocks[i] = block("b" + i);
+		}
+
+		// add the cells along the diagonal.
+		for (int i = 0; i < instances.length; i++)
+			this.table.add(instances[i], blocks[i], rule, state);
+
+		for (int i = 0; i < instances.length; i++)
+			for (int j = 0; j < blocks.length; j++) {
+				assertEquals(i == j, this.table.contains(instances[i], blocks[j]));
+				assertEquals(i == j ? setOf(state) : setOf(),
+						this.table.decode(this.table.get(instances[i], blocks[j], rule)));
+			}
+	}
+
+	public void testPresentWithoutStates() {
+		TypestateRule rule = rule("rule");
+		InstanceKey instance = instance("i");
+		BasicBlockInContext<IExplodedBasicBlock> block = block("b");
+
+		this.table.encode(rule, state("s"));
+		this.table.add(instance, block);
+
+		// the cell is present but has an empty state set.
+		assertTrue(this.table.contains(instance, block));
+		assertEquals(0, this.table.get(instance, block, rule));
+		assertEquals(setOf(), this.table.decode(this.table.get(instance, block, rule)));
+	}
+
+	public void testRuleMasks() {
+		TypestateRule rule1 = rule("rule1");
+		TypestateRule rule2 = rule("rule2");
+		IDFAState s1 = state("s1");
+		IDFAState s2 = state("s2");
+		InstanceKey instance = instance("i");
+		BasicBlockInContext<IExplodedBasicBlock> block = block("b");
+
+		this.table.add(instance, block, rule1, s1);
+		this.table.add(instance, block, rule2, s2);
+
+		// the same state of another rule is another combination.
+		this.table.add(instance, block, rule2, s1);
+
+		assertEquals(setOf(s1), this.table.decode(this.table.get(instance, block, rule1)));
+		assertEquals(setOf(s1, s2), this.table.decode(this.table.get(instance, block, rule2)));
+		assertTrue(this.table.encode(rule1, s1) != this.table.encode(rule2, s1));
+		assertEquals(0, this.table.get(instance, block, rule("rule3")));
+	}
+
+	public void testTooManyCombinations() {
+		TypestateRule rule = rule("rule");
+
+		for (int i = 0; i < MAX_COMBINATIONS; i++)
+			this.table.encode(rule, state("s" + i));
+
+		try {
+			this.table.encode(rule, state("s" + MAX_COMBINATIONS));
+			fail("Expected an IllegalStateException.");
+		} catch (IllegalStateException e) {
+			// expected.
+		}
+	}
+
+	public void testUnknownCell() {
+		TypestateRule rule = rule("rule");
+		IDFAState state = state("s");
+		InstanceKey instance = instance("i");
+		BasicBlockInContext<IExplodedBasicBlock> block = block("b");
+
+		assertFalse(this.table.contains(instance, block));
+		assertEquals(0, this.table.get(instance, block, rule));
+
+		this.table.add(instance, block, rule, state);
+
+		assertFalse(this.table.contains(instance("j"), block));
+		assertFalse(this.table.contains(instance, block("c")));
+		assertEquals(0, this.table.get(instance("j"), block, rule));
+	}
+}
@@ -0,0 +1,152 @@
+package edu.cuny.hunter.streamrefactoring.ui.tests;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.ibm.wala.ipa.callgraph.propagation.ConstantKey;
+import com.ibm.wala.ipa.callgraph.propagation.InstanceKey;
+
+import edu.cuny.hunter.streamrefactoring.core.analysis.InstancePredecessorClosure;
+import junit.framework.TestCase;
+
+public class InstancePredecessorClosureTest extends TestCase {
+
+	private static final InstanceKey A = instance("a");
+
+	private static final InstanceKey B = instance("b");
+
+	private static final InstanceKey C = instance("c");
+
+	private static final InstanceKey D = instance("d");
+
+	private static final InstanceKey E = instance("e");
+
+	private static InstanceKey instance(String name) {
+		return new ConstantKey<>(name, null);
+	}
+
+	private static Set<InstanceKey> setOf(InstanceKey... instances) {
+		return new HashSet<>(Arrays.asList(instances));
+	}
+
+	private Map<InstanceKey, Set<InstanceKey>> instanceToPredecessorsMap = new HashMap<>();
+
+	private InstancePredecessorClosure close() {
+		return new InstancePredecessorClosure(this.instanceToPredecessorsMap);
+	}
+
+	private void put(InstanceKey instance, InstanceKey... predecessors) {
+		this.instanceToPredecessorsMap.put(instance, setOf(predecessors));
+	}
+
+	public void testChain() {
+		this.put(A);
+		this.put(B, A);
+		this.put(C, B);
+
+		InstancePredecessorClosure closure = this.close();
+
+		assertEquals(setOf(A, B), closure.getAllPredecessors(C));
+		assertEquals(setOf(A), closure.getAllPredecessors(B));
+		assertEquals(setOf(), closure.getAllPredecessors(A));
+		assertEquals(setOf(A), closure.getOrigins(C));
+	}
+
+	public void testCycle() {
+		// c <- b <- a <- b, where a also originates from d.
+		this.put(A, B, D);
+		this.put(B, A);
+		this.put(C, B);
+
+		InstancePredecessorClosure closure = this.close();
+
+		// the members of a cycle are their own predecessors.
+		assertEquals(setOf(A, B, D), closure.getAllPredecessors(A));
+		assertEquals(setOf(A, B, D), closure.getAllPredecessors(B));
+		assertEquals(setOf(A, B, D), closure.getAllPredecessors(C));
+		assertEquals(setOf(D), closure.getOrigins(A));
+		assertEquals(setOf(D), closure.getOrigins(C));
+	}
+
+	public void testCycleWithoutOrigins() {
+		this.put(A, B);
+		this.put(B, A);
+
+		InstancePredecessorClosure closure = this.close();
+
+		assertEquals(setOf(A, B), closure.getAllPredecessors(A));
+		assertEquals(setOf(), closure.getOrigins(A));
+	}
+
+	public void testDiamond() {
+		// d <- b <- a and d <- c <- a.
+		this.put(B, A);
+		this.put(C, A);
+		this.put(D, B, C);
+
+		InstancePredecessorClosure closure = this.close();
+
+		assertEquals(setOf(A, B, C), closure.getAllPredecessors(D));
+		assertEquals(setOf(A), closure.getOrigins(D));
+		assertEquals(setOf(A, B, C), closure.getAllPredecessors(Arrays.asList(B, C, D)));
+		assertEquals(setOf(A), closure.getAllPredecessors(Arrays.asList(B, C)));
+	}
+
+	public void testMultipleOrigins() {
+		// e <- c <- a and e <- d <- b.
+		this.put(C, A);
+		this.put(D, B);
+		this.put(E, C, D);
+
+		InstancePredecessorClosure closure = this.close();
+
+		assertEquals(setOf(A, B, C, D), closure.getAllPredecessors(E));
+		assertEquals(setOf(A, B), closure.getOrigins(E));
+		assertEquals(setOf(A), closure.getOrigins(C));
+	}
+
+	public void testOriginsOfRoot() {
+		this.put(A);
+		this.put(B, A);
+
+		InstancePredecessorClosure closure = this.close();
+
+		// a root, whether or not it's in the map, is its own origin.
+		assertEquals(setOf(A), closure.getOrigins(A));
+		assertEquals(setOf(), closure.getAllPredecessors(A));
+
+		this.instanceToPredecessorsMap.remove(A);
+		closure = this.close();
+
+		assertEquals(setOf(A), closure.getOrigins(A));
+		assertEquals(setOf(A), closure.getOrigins(B));
+	}
+
+	public void testSelfLoop() {
+		this.put(A, A);
+		this.put(B, A);
+
+		InstancePredecessorClosure closure = this.close();
+
+		assertEquals(setOf(A), closure.getAllPredecessors(A));
+		assertEquals(setOf(A), closure.getAllPredecessors(B));
+
+		// a isn't a root as it has a predecessor, namely, itself.
+		assertEquals(setOf(), closure.getOrigins(B));
+	}
+
+	public void testUnknownInstance() {
+		this.put(B, A);
+
+		InstancePredecessorClosure closure = this.close();
+
+		assertEquals(setOf(), closure.getAllPredecessors(C));
+		assertEquals(setOf(A), closure.getAllPredecessors(Arrays.asList(B, C)));
+		assertEquals(setOf(), closure.getAllPredecessors(Collections.singleton(C)));
+		assertEquals(setOf(C), closure.getOrigins(C));
+	}
+}
@@ -0,0 +1,306 @@
+package edu.cuny.hunter.streamrefactoring.ui.tests;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.Stack;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.Vector;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.LinkedTransferQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.regex.Pattern;
+import java.util.stream.BaseStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import edu.cuny.hunter.streamrefactoring.core.analysis.KnownSpliteratorCharacteristics;
+import junit.framework.TestCase;
+
+/**
+ * Checks the known characteristics against those of the spliterators of the
+ * streams actually created from each type available on the test classpath.
+ */
+public class KnownSpliteratorCharacteristicsTest extends TestCase {
+
+	private static final class DelayedElement implements Delayed {
+
+		@Override
+		public int compareTo(Delayed o) {
+			return 0;
+		}
+
+		@Override
+		public long getDelay(TimeUnit unit) {
+			return 0;
+		}
+	}
+
+	private interface StreamCreator {
+		BaseStream<?, ?> create() throws Exception;
+	}
+
+	private static final Collection<Integer> ELEMENTS = Arrays.asList(1, 2, 3);
+
+	private static <T extends Collection<Integer>> T fill(T collection) {
+		collection.addAll(ELEMENTS);
+		return collection;
+	}
+
+	private static Map<Integer, Integer> fill(Map<Integer, Integer> map) {
+		ELEMENTS.forEach(e -> map.put(e, e));
+		return map;
+	}
+
+	/**
+	 * Returns an instance of the given third-party type created by invoking the
+	 * given static factory method with the given arguments or by its
+	 * no-argument constructor if there's no such method.
+	 */
+	private static Collection<?> create(String className, String factoryMethodName, Object... args)
+			throws Exception {
+		Class<?> clazz = Class.forName(className);
+
+		if (factoryMethodName == null) {
+			@SuppressWarnings("unchecked")
+			Collection<Object> ret = (Collection<Object>) clazz.newInstance();
+			ret.addAll(Arrays.asList(args));
+			return ret;
+		}
+
+		Class<?>[] parameterTypes = new Class<?>[args.length];
+		Arrays.fill(parameterTypes, Object.class);
+
+		if (factoryMethodName.equals("of") && clazz.getSimpleName().equals("ImmutableSortedSet"))
+			Arrays.fill(parameterTypes, Comparable.class);
+
+		return (Collection<?>) clazz.getMethod(factoryMethodName, parameterTypes).invoke(null, args);
+	}
+
+	/**
+	 * A map from the binary name of an {@link Iterable} type to a sample
+	 * instance.
+	 */
+	private Map<String, Collection<?>> iterables = new HashMap<>();
+
+	/**
+	 * A map from the binary name of a non-{@link Iterable} type to a map from
+	 * the name of one of its stream creation methods to a creator of a sample
+	 * stream.
+	 */
+	private Map<String, Map<String, StreamCreator>> streamCreators = new HashMap<>();
+
+	private File file;
+
+	private JarFile jarFile;
+
+	private ZipFile zipFile;
+
+	private void addStreamCreator(String className, String methodName, StreamCreator creator) {
+		this.streamCreators.computeIfAbsent(className, k -> new HashMap<>()).put(methodName, creator);
+	}
+
+	/**
+	 * Adds a sample of a third-party type if it's on the classpath.
+	 */
+	private void addThirdPartyIterable(String factoryClassName, String factoryMethodName, Object... args)
+			throws Exception {
+		Collection<?> iterable;
+
+		try {
+			iterable = create(factoryClassName, factoryMethodName, args);
+		} catch (ClassNotFoundException e) {
+			return;
+		}
+
+		this.iterables.put(iterable.getClass().getName(), iterable);
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		// lists.
+		for (Collection<?> list : new Collection<?>[] { fill(new ArrayList<>()), fill(new LinkedList<>()),
+				fill(new Vector<>()), fill(new Stack<>()), Arrays.asList(1, 2, 3), fill(new CopyOnWriteArrayList<>()) })
+			this.iterables.put(list.getClass().getName(), list);
+
+		// sets.
+		for (Collection<?> set : new Collection<?>[] { fill(new HashSet<>()), fill(new HashMap<>()).keySet(),
+				fill(new HashMap<>()).entrySet(), fill(new LinkedHashSet<>()), fill(new LinkedHashMap<>()).keySet(),
+				fill(new LinkedHashMap<>()).entrySet(), fill(new TreeSet<>()), fill(new TreeMap<>()).entrySet(),
+				fill(new ConcurrentSkipListSet<>()), fill(new CopyOnWriteArraySet<>()) })
+			this.iterables.put(set.getClass().getName(), set);
+
+		// map values.
+		for (Collection<?> values : new Collection<?>[] { fill(new HashMap<>()).values(),
+				fill(new LinkedHashMap<>()).values(), fill(new TreeMap<>()).values() })
+			this.iterables.put(values.getClass().getName(), values);
+
+		// queues and deques.
+		DelayQueue<DelayedElement> delayQueue = new DelayQueue<>();
+		delayQueue.add(new DelayedElement());
+
+		for (Collection<?> queue : new Collection<?>[] { fill(new ArrayDeque<>()), fill(new PriorityQueue<>()),
+				fill(new PriorityBlockingQueue<>()), delayQueue, fill(new ArrayBlockingQueue<>(ELEMENTS.size())),
+				fill(new LinkedBlockingQueue<>()), fill(new LinkedBlockingDeque<>()),
+				fill(new ConcurrentLinkedQueue<>()), fill(new ConcurrentLinkedDeque<>()),
+				fill(new LinkedTransferQueue<>()) })
+			this.iterables.put(queue.getClass().getName(), queue);
+
+		// third-party collections.
+		this.addThirdPartyIterable("com.google.common.collect.ImmutableList", "of", 1, 2);
+		this.addThirdPartyIterable("com.google.common.collect.ImmutableSet", "of", 1, 2);
+		this.addThirdPartyIterable("com.google.common.collect.ImmutableSortedSet", "of", 1, 2);
+		this.addThirdPartyIterable("org.eclipse.collections.impl.list.mutable.FastList", null, 1, 2);
+		this.addThirdPartyIterable("org.eclipse.collections.impl.set.mutable.UnifiedSet", null, 1, 2);
+		this.addThirdPartyIterable("org.eclipse.collections.impl.set.sorted.mutable.TreeSortedSet", null, 1, 2);
+
+		// character sequences.
+		for (CharSequence sequence : new CharSequence[] { "abc", new StringBuilder("abc"),
+				new StringBuffer("abc") }) {
+			this.addStreamCreator(sequence.getClass().getName(), "chars", sequence::chars);
+			this.addStreamCreator(sequence.getClass().getName(), "codePoints", sequence::codePoints);
+		}
+
+		// random numbers.
+		Random random = new Random();
+		this.addStreamCreator(Random.class.getName(), "ints", random::ints);
+		this.addStreamCreator(Random.class.getName(), "longs", random::longs);
+		this.addStreamCreator(Random.class.getName(), "doubles", random::doubles);
+
+		SplittableRandom splittableRandom = new SplittableRandom();
+		this.addStreamCreator(SplittableRandom.class.getName(), "ints", splittableRandom::ints);
+		this.addStreamCreator(SplittableRandom.class.getName(), "longs", splittableRandom::longs);
+		this.addStreamCreator(SplittableRandom.class.getName(), "doubles", splittableRandom::doubles);
+
+		// others.
+		BitSet bitSet = new BitSet();
+		bitSet.set(1);
+		bitSet.set(3);
+		this.addStreamCreator(BitSet.class.getName(), "stream", bitSet::stream);
+
+		this.addStreamCreator(BufferedReader.class.getName(), "lines",
+				() -> new BufferedReader(new StringReader("a\nb")).lines());
+		this.addStreamCreator(Pattern.class.getName(), "splitAsStream",
+				() -> Pattern.compile(",").splitAsStream("a,b"));
+
+		this.file = File.createTempFile(this.getClass().getSimpleName(), ".jar");
+
+		try (JarOutputStream out = new JarOutputStream(new FileOutputStream(this.file))) {
+			out.putNextEntry(new ZipEntry("a"));
+			out.closeEntry();
+		}
+
+		this.zipFile = new ZipFile(this.file);
+		this.addStreamCreator(ZipFile.class.getName(), "stream", this.zipFile::stream);
+
+		this.jarFile = new JarFile(this.file);
+		this.addStreamCreator(JarFile.class.getName(), "stream", this.jarFile::stream);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		if (this.zipFile != null)
+			this.zipFile.close();
+
+		if (this.jarFile != null)
+			this.jarFile.close();
+
+		if (this.file != null && !this.file.delete())
+			throw new IOException("Can't delete: " + this.file + ".");
+
+		super.tearDown();
+	}
+
+	/**
+	 * The characteristics are those of Java 8.
+	 */
+	private static boolean isJava8() {
+		return System.getProperty("java.specification.version").equals("1.8");
+	}
+
+	private static boolean isOnClasspath(String className) {
+		try {
+			Class.forName(className);
+			return true;
+		} catch (ClassNotFoundException e) {
+			return false;
+		}
+	}
+
+	public void testIterableTypes() {
+		if (!isJava8())
+			return;
+
+		KnownSpliteratorCharacteristics.getIterableTypeToCharacteristics().forEach((className, characteristics) -> {
+			if (!isOnClasspath(className))
+				return;
+
+			Collection<?> iterable = this.iterables.get(className);
+			assertNotNull("No sample of: " + className + ".", iterable);
+			assertEquals("Characteristics of: " + className + ".", characteristics.intValue(),
+					iterable.stream().spliterator().characteristics());
+		});
+	}
+
+	public void testNonIterableTypes() {
+		if (!isJava8())
+			return;
+
+		KnownSpliteratorCharacteristics.getTypeToMethodToCharacteristics()
+				.forEach((className, methodToCharacteristics) -> {
+					if (!isOnClasspath(className))
+						return;
+
+					methodToCharacteristics.forEach((methodName, characteristics) -> {
+						Map<String, StreamCreator> methodToCreator = this.streamCreators.get(className);
+						StreamCreator creator = methodToCreator == null ? null : methodToCreator.get(methodName);
+						assertNotNull("No sample of: " + className + "." + methodName + "().", creator);
+
+						try (BaseStream<?, ?> stream = creator.create()) {
+							assertEquals("Characteristics of: " + className + "." + methodName + "().",
+									characteristics.intValue(), stream.spliterator().characteristics());
+						} catch (Exception e) {
+							throw new RuntimeException(e);
+						}
+					});
+				});
+	}
+
+	public void testGet() {
+		assertNull(KnownSpliteratorCharacteristics.get(Object.class.getName(), "stream"));
+		assertNull(KnownSpliteratorCharacteristics.get(String.class.getName(), "lines"));
+		assertEquals(KnownSpliteratorCharacteristics.getIterableTypeToCharacteristics().get(ArrayList.class.getName()),
+				KnownSpliteratorCharacteristics.get(ArrayList.class.getName(), "parallelStream"));
+	}
+}
@@ -7,6 +7,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.EnumSet;
@@ -14,6 +15,8 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -27,6 +30,7 @@ import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.jdt.core.ICompilationUnit;
 import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.jdt.core.IPackageFragment;
 import org.eclipse.jdt.core.ISourceManipulation;
 import org.eclipse.jdt.core.JavaModelException;
@@ -37,6 +41,8 @@ import org.eclipse.jdt.ui.tests.refactoring.Java18Setup;
 import org.eclipse.jdt.ui.tests.refactoring.RefactoringTest;
 import org.eclipse.ltk.core.refactoring.RefactoringStatus;
 
+import com.ibm.wala.ipa.callgraph.propagation.InstanceKey;
+
 import edu.cuny.hunter.streamrefactoring.core.analysis.ExecutionMode;
 import edu.cuny.hunter.streamrefactoring.core.analysis.Ordering;
 import edu.cuny.hunter.streamrefactoring.core.analysis.PreconditionFailure;
@@ -45,6 +51,8 @@ import edu.cuny.hunter.streamrefactoring.core.analysis.Refactoring;
 import edu.cuny.hunter.streamrefactoring.core.analysis.Stream;
 import edu.cuny.hunter.streamrefactoring.core.analysis.StreamAnalyzer;
 import edu.cuny.hunter.streamrefactoring.core.analysis.TransformationAction;
+import edu.cuny.hunter.streamrefactoring.core.wala.BudgetedProgressMonitor;
+import edu.cuny.hunter.streamrefactoring.core.wala.EclipseProjectAnalysisEngine;
 import junit.framework.Test;
 import junit.framework.TestSuite;
 
@@ -142,6 +150,37 @@ public class OptimizeStreamRefactoringTest extends RefactoringTest {
 		return cu;
 	}
 
+	/**
+	 * Returns a {@link StreamAnalyzer} whose engines report any typestate time
+	 * budget as exceeded as soon as it's checked.
+	 */
+	private static StreamAnalyzer createTypestateBudgetExceedingAnalyzer() {
+		return new StreamAnalyzer(false, N_TO_USE_FOR_STREAMS_DEFAULT) {
+
+			@Override
+			protected EclipseProjectAnalysisEngine<InstanceKey> createAnalysisEngine(List<IJavaProject> projects)
+					throws IOException, CoreException {
+				EclipseProjectAnalysisEngine<InstanceKey> engine = new EclipseProjectAnalysisEngine<InstanceKey>(
+						projects.get(0), this.getNForStreams()) {
+
+					@Override
+					public BudgetedProgressMonitor createTypestateBudgetedProgressMonitor(long timeBudget) {
+						return new BudgetedProgressMonitor(null, 0, 0) {
+
+							@Override
+							public boolean isBudgetExceeded() {
+								return true;
+							}
+						};
+					}
+				};
+
+				engine.buildAnalysisScope();
+				return engine;
+			}
+		};
+	}
+
 	private static String errorMessage(String attribute, StreamAnalysisExpectedResult result) {
 		return "Unexpected " + attribute + " for " + result.getExpectedCreation() + ".";
 	}
@@ -176,6 +215,14 @@ public class OptimizeStreamRefactoringTest extends RefactoringTest {
 		return Paths.get(element.getResource().getLocation().toString() + File.separator + ENTRY_POINT_FILENAME);
 	}
 
+	/**
+	 * Returns true iff the status of the given {@link Stream} has an entry for the
+	 * given {@link PreconditionFailure}.
+	 */
+	private static boolean hasStatusEntry(Stream stream, PreconditionFailure failure) {
+		return Arrays.stream(stream.getStatus().getEntries()).anyMatch(e -> e.getCode() == failure.getCode());
+	}
+
 	public static Test setUpTest(Test test) {
 		return new Java18Setup(test);
 	}
@@ -323,8 +370,27 @@ public class OptimizeStreamRefactoringTest extends RefactoringTest {
 	 * Runs a single analysis test.
 	 */
 	private void helper(int nToUseForStreams, StreamAnalysisExpectedResult... expectedResults) throws Exception {
+		this.helper(analyzer -> {
+		}, nToUseForStreams, expectedResults);
+	}
+
+	/**
+	 * Runs a single analysis test using a {@link StreamAnalyzer} configured by the
+	 * given {@link Consumer}.
+	 */
+	private void helper(Consumer<StreamAnalyzer> configuration, int nToUseForStreams,
+			StreamAnalysisExpectedResult... expectedResults) throws Exception {
 		LOGGER.fine("Using N = " + nToUseForStreams + ".");
 
+		StreamAnalyzer analyzer = new StreamAnalyzer(false, nToUseForStreams);
+		configuration.accept(analyzer);
+		this.helper(analyzer, expectedResults);
+	}
+
+	/**
+	 * Runs a single analysis test using the given {@link StreamAnalyzer}.
+	 */
+	private void helper(StreamAnalyzer analyzer, StreamAnalysisExpectedResult... expectedResults) throws Exception {
 		// compute the actual results.
 		ICompilationUnit cu = this.createCUfromTestFile(this.getPackageP(), "A");
 
@@ -334,7 +400,6 @@ public class OptimizeStreamRefactoringTest extends RefactoringTest {
 
 		ASTNode ast = parser.createAST(new NullProgressMonitor());
 
-		StreamAnalyzer analyzer = new StreamAnalyzer(false, nToUseForStreams);
 		ast.accept(analyzer);
 
 		analyzer.analyze();
@@ -398,6 +463,15 @@ public class OptimizeStreamRefactoringTest extends RefactoringTest {
 		this.helper(N_TO_USE_FOR_STREAMS_DEFAULT, expectedResults);
 	}
 
+	/**
+	 * Runs a single analysis test using a {@link StreamAnalyzer} configured by the
+	 * given {@link Consumer}.
+	 */
+	private void helper(Consumer<StreamAnalyzer> configuration, StreamAnalysisExpectedResult... expectedResults)
+			throws Exception {
+		this.helper(configuration, N_TO_USE_FOR_STREAMS_DEFAULT, expectedResults);
+	}
+
 	private void refreshFromLocal() throws CoreException {
 		if (this.getRoot().exists())
 			this.getRoot().getResource().refreshLocal(IResource.DEPTH_INFINITE, null);
@@ -502,6 +576,75 @@ public class OptimizeStreamRefactoringTest extends RefactoringTest {
 				Refactoring.CONVERT_SEQUENTIAL_STREAM_TO_PARALLEL, RefactoringStatus.OK, Collections.emptySet()));
 	}
 
+	/**
+	 * Test that streams are marked as not analyzable when the call graph can't be
+	 * built within budget even using the fallback policy.
+	 */
+	public void testCallGraphBudgetExceeded() throws Exception {
+		this.helper(analyzer -> analyzer.setCallGraphTimeBudget(1),
+				new StreamAnalysisExpectedResult("set.stream()", null, null, false, false, false, null, null, null,
+						RefactoringStatus.ERROR, EnumSet.of(PreconditionFailure.CALL_GRAPH_BUDGET_EXCEEDED)));
+	}
+
+	/**
+	 * Test that the call graph is rebuilt using N = 1 for streams when the call
+	 * graph budget is exceeded using the original N.
+	 */
+	public void testCallGraphBudgetFallback() throws Exception {
+		List<EclipseProjectAnalysisEngine<InstanceKey>> engines = new ArrayList<>();
+
+		StreamAnalyzer analyzer = new StreamAnalyzer(false, N_TO_USE_FOR_STREAMS_DEFAULT) {
+
+			@Override
+			protected EclipseProjectAnalysisEngine<InstanceKey> createAnalysisEngine(List<IJavaProject> projects)
+					throws IOException, CoreException {
+				EclipseProjectAnalysisEngine<InstanceKey> engine = new EclipseProjectAnalysisEngine<InstanceKey>(
+						projects.get(0), this.getNForStreams()) {
+
+					private boolean budgetExceeded;
+
+					@Override
+					protected BudgetedProgressMonitor createBudgetedProgressMonitor(
+							com.ibm.wala.util.MonitorUtil.IProgressMonitor delegate) {
+						// only exceed the budget of the first attempt.
+						if (this.budgetExceeded)
+							return super.createBudgetedProgressMonitor(delegate);
+
+						this.budgetExceeded = true;
+
+						return new BudgetedProgressMonitor(delegate, 0, 0) {
+
+							@Override
+							public boolean isBudgetExceeded() {
+								return true;
+							}
+						};
+					}
+				};
+
+				engine.buildAnalysisScope();
+				engines.add(engine);
+				return engine;
+			}
+		};
+
+		// a budget is needed for the fallback policy to apply.
+		analyzer.setCallGraphTimeBudget(TimeUnit.HOURS.toMillis(1));
+
+		this.helper(analyzer);
+
+		assertEquals(1, engines.size());
+		EclipseProjectAnalysisEngine<InstanceKey> engine = engines.get(0);
+		assertTrue(engine.isUsingFallbackPolicy());
+		assertEquals(1, engine.getNToUseForStreams());
+
+		Set<Stream> streams = analyzer.getStreamSet();
+		assertFalse(streams.isEmpty());
+
+		for (Stream stream : streams)
+			assertFalse(hasStatusEntry(stream, PreconditionFailure.CALL_GRAPH_BUDGET_EXCEEDED));
+	}
+
 	public void testCollectionFromParameter() throws Exception {
 		this.helper(new StreamAnalysisExpectedResult("h.parallelStream()",
 				Collections.singleton(ExecutionMode.PARALLEL), Collections.singleton(Ordering.UNORDERED), false, true,
@@ -670,6 +813,20 @@ public class OptimizeStreamRefactoringTest extends RefactoringTest {
 						Collections.emptySet()));
 	}
 
+	/**
+	 * Same as {@link #testIntermediateOperations()} but solving a single
+	 * typestate rule whose automaton is the product of those of the separate
+	 * rules.
+	 */
+	public void testIntermediateOperationsWithProductTypestateRule() throws Exception {
+		this.helper(analyzer -> analyzer.setUseProductTypestateRule(true), 3,
+				new StreamAnalysisExpectedResult("set.stream()", Collections.singleton(ExecutionMode.SEQUENTIAL),
+						Collections.singleton(Ordering.ORDERED), false, true, false,
+						EnumSet.of(TransformationAction.UNORDER, TransformationAction.CONVERT_TO_PARALLEL),
+						PreconditionSuccess.P3, Refactoring.CONVERT_SEQUENTIAL_STREAM_TO_PARALLEL, RefactoringStatus.OK,
+						Collections.emptySet()));
+	}
+
 	public void testIntStreamGenerate() throws Exception {
 		this.helper(new StreamAnalysisExpectedResult("IntStream.generate(() -> 1)",
 				Collections.singleton(ExecutionMode.SEQUENTIAL), Collections.singleton(Ordering.ORDERED), false, false,
@@ -709,6 +866,48 @@ public class OptimizeStreamRefactoringTest extends RefactoringTest {
 						EnumSet.of(PreconditionFailure.REDUCE_ORDERING_MATTERS)));
 	}
 
+	/**
+	 * Same as {@link #testMotivatingExample()} but solving a single typestate rule
+	 * whose automaton is the product of those of the separate rules.
+	 */
+	public void testMotivatingExampleWithProductTypestateRule() throws Exception {
+		this.helper(analyzer -> analyzer.setUseProductTypestateRule(true),
+				new StreamAnalysisExpectedResult("unorderedWidgets.stream()", EnumSet.of(ExecutionMode.SEQUENTIAL),
+						EnumSet.of(Ordering.ORDERED), false, false, true,
+						EnumSet.of(TransformationAction.CONVERT_TO_PARALLEL), PreconditionSuccess.P2,
+						Refactoring.CONVERT_SEQUENTIAL_STREAM_TO_PARALLEL, RefactoringStatus.OK,
+						Collections.emptySet()),
+
+				new StreamAnalysisExpectedResult("orderedWidgets.parallelStream()", EnumSet.of(ExecutionMode.PARALLEL),
+						EnumSet.of(Ordering.ORDERED), false, false, false, null, null, null, RefactoringStatus.ERROR,
+						EnumSet.of(PreconditionFailure.NO_STATEFUL_INTERMEDIATE_OPERATIONS)),
+
+				new StreamAnalysisExpectedResult("orderedWidgets.stream()", EnumSet.of(ExecutionMode.SEQUENTIAL),
+						EnumSet.of(Ordering.ORDERED), false, true, true, null, null, null, RefactoringStatus.ERROR,
+						EnumSet.of(PreconditionFailure.REDUCE_ORDERING_MATTERS)));
+	}
+
+	/**
+	 * Same as {@link #testMotivatingExample()} but bypassing the stream pipeline
+	 * implementation using summaries.
+	 */
+	public void testMotivatingExampleWithStreamLibrarySummaries() throws Exception {
+		this.helper(analyzer -> analyzer.setUseStreamLibrarySummaries(true),
+				new StreamAnalysisExpectedResult("unorderedWidgets.stream()", EnumSet.of(ExecutionMode.SEQUENTIAL),
+						EnumSet.of(Ordering.ORDERED), false, false, true,
+						EnumSet.of(TransformationAction.CONVERT_TO_PARALLEL), PreconditionSuccess.P2,
+						Refactoring.CONVERT_SEQUENTIAL_STREAM_TO_PARALLEL, RefactoringStatus.OK,
+						Collections.emptySet()),
+
+				new StreamAnalysisExpectedResult("orderedWidgets.parallelStream()", EnumSet.of(ExecutionMode.PARALLEL),
+						EnumSet.of(Ordering.ORDERED), false, false, false, null, null, null, RefactoringStatus.ERROR,
+						EnumSet.of(PreconditionFailure.NO_STATEFUL_INTERMEDIATE_OPERATIONS)),
+
+				new StreamAnalysisExpectedResult("orderedWidgets.stream()", EnumSet.of(ExecutionMode.SEQUENTIAL),
+						EnumSet.of(Ordering.ORDERED), false, true, true, null, null, null, RefactoringStatus.ERROR,
+						EnumSet.of(PreconditionFailure.REDUCE_ORDERING_MATTERS)));
+	}
+
 	public void testMultipleCallsToEnclosingMethod() throws Exception {
 		this.helper(new StreamAnalysisExpectedResult("DoubleStream.of(1.111)",
 				Collections.singleton(ExecutionMode.SEQUENTIAL), Collections.singleton(Ordering.ORDERED), false, false,
@@ -912,6 +1111,44 @@ public class OptimizeStreamRefactoringTest extends RefactoringTest {
 				Collections.singleton(PreconditionFailure.UNORDERED)));
 	}
 
+	/**
+	 * Test that streams whose instances exceed the instance budget fail instead
+	 * of being analyzed using a partial result.
+	 */
+	public void testTypestateInstanceBudgetExceeded() throws Exception {
+		StreamAnalyzer analyzer = createTypestateBudgetExceedingAnalyzer();
+
+		// a budget is needed for the instances to be monitored.
+		analyzer.setTypestateInstanceTimeBudget(TimeUnit.HOURS.toMillis(1));
+
+		this.helper(analyzer);
+
+		Set<Stream> streams = analyzer.getStreamSet();
+		assertFalse(streams.isEmpty());
+
+		for (Stream stream : streams)
+			assertTrue(hasStatusEntry(stream, PreconditionFailure.TYPESTATE_BUDGET_EXCEEDED));
+	}
+
+	/**
+	 * Test that the streams of the instances skipped once a rule exceeds its
+	 * budget fail.
+	 */
+	public void testTypestateRuleBudgetExceeded() throws Exception {
+		StreamAnalyzer analyzer = createTypestateBudgetExceedingAnalyzer();
+
+		// a budget is needed for the rule to be monitored.
+		analyzer.setTypestateRuleTimeBudget(TimeUnit.HOURS.toMillis(1));
+
+		this.helper(analyzer);
+
+		Set<Stream> streams = analyzer.getStreamSet();
+		assertFalse(streams.isEmpty());
+
+		for (Stream stream : streams)
+			assertTrue(hasStatusEntry(stream, PreconditionFailure.TYPESTATE_BUDGET_EXCEEDED));
+	}
+
 	/**
 	 * Test #119.
 	 */